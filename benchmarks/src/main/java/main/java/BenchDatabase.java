@@ -0,0 +1,38 @@
+package main.java;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Points {@link util.DatabaseConnection} at an in-memory H2 database seeded from
+ * bench-schema.sql. Must run before anything touches DatabaseConnection, whose settings
+ * are read once when the class loads.
+ *
+ * H2 runs in its default mode rather than MODE=MySQL: the server's SQL needs nothing from
+ * MySQL mode, and in it concurrent inserts that roll back can hand out the same
+ * AUTO_INCREMENT key twice, which shows up as spurious booking failures under load.
+ */
+final class BenchDatabase {
+    static final String URL = "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+
+    private static boolean started;
+
+    private BenchDatabase() {
+    }
+
+    static synchronized void start() throws SQLException {
+        if (started) {
+            return;
+        }
+        System.setProperty("db.url", URL);
+        System.setProperty("db.user", "sa");
+        System.setProperty("db.password", "");
+        try (Connection conn = DriverManager.getConnection(URL, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("RUNSCRIPT FROM 'classpath:/bench-schema.sql'");
+        }
+        started = true;
+    }
+}
@@ -0,0 +1,73 @@
+package main.java;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseConnection;
+
+/**
+ * POST /api/book followed by POST /api/booking/cancel against the embedded database, so
+ * each operation leaves the show as it found it. Measures the full handler path: body
+ * binding, seat allocation, the booking transaction and the set-based cancellation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class BookingBenchmark {
+    private static final Pattern RESERVATION_ID = Pattern.compile("\"reservationId\":(\\d+)");
+
+    @Param({ "1", "4" })
+    public int seats;
+
+    @Param({ "false", "true" })
+    public boolean adjacent;
+
+    private final SimpleServer.BookingHandler book = new SimpleServer.BookingHandler();
+    private final SimpleServer.BookingCancelHandler cancel = new SimpleServer.BookingCancelHandler();
+    private final FakeExchange exchange = new FakeExchange();
+    private String body;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchDatabase.start();
+        body = "{\"name\": \"Bench User\", \"age\": 30, \"gender\": \"Other\", \"movieId\": 1, " +
+            "\"showId\": 1, \"seats\": " + seats + ", \"adjacent\": " + adjacent + "}";
+    }
+
+    @TearDown
+    public void tearDown() {
+        DatabaseConnection.shutdown();
+    }
+
+    @Benchmark
+    public int bookAndCancel() throws IOException {
+        book.handle(exchange.reset("POST", "/api/book", body));
+        Matcher matcher = RESERVATION_ID.matcher(exchange.responseText());
+        if (exchange.getResponseCode() != 200 || !matcher.find()) {
+            throw new IllegalStateException("Booking failed: " + exchange.responseText());
+        }
+        String reservationId = matcher.group(1);
+        cancel.handle(exchange.reset("POST", "/api/booking/cancel", "{\"reservationId\": " + reservationId + "}"));
+        if (exchange.getResponseCode() != 200) {
+            throw new IllegalStateException("Cancellation failed: " + exchange.responseText());
+        }
+        return exchange.getResponseCode();
+    }
+}
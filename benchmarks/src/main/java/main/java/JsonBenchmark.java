@@ -0,0 +1,48 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.JsonWriter;
+
+/** Request body binding and string escaping, the JSON work every booking does. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class JsonBenchmark {
+    private static final String BOOKING_BODY =
+        "{\"name\": \"Asha Verma\", \"age\": 29, \"gender\": \"Female\", " +
+        "\"movieId\": 1, \"showId\": 2, \"seats\": 4, \"adjacent\": true}";
+
+    // Most strings need no escaping at all; the second is the worst realistic case
+    private String plain = "The Dark Knight - Screen 2, 7:00 PM show on 2026-10-21";
+    private String special = "Line one\n\t\"quoted\" C:\\path\\to\\file \u0001 and more\r\n";
+
+    private final FakeExchange exchange = new FakeExchange();
+
+    @Benchmark
+    public Requests.Booking parseBooking() throws IOException {
+        return Requests.Booking.read(exchange.reset("POST", "/api/book", BOOKING_BODY));
+    }
+
+    @Benchmark
+    public String escapePlain() {
+        return JsonWriter.escape(plain);
+    }
+
+    @Benchmark
+    public String escapeSpecial() {
+        return JsonWriter.escape(special);
+    }
+}
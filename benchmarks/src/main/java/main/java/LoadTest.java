@@ -0,0 +1,483 @@
+package main.java;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import util.LatencyHistogram;
+
+/**
+ * End-to-end load generator. Starts SimpleServer in this JVM against an in-memory H2
+ * database (or drives a running server given by -Dload.target), runs
+ * closed-loop clients through the booking journey for a fixed time, then reports
+ * throughput and latency per step and checks that no seat was booked twice and no stock
+ * went negative.
+ *
+ * A journey is GET /api/movies, GET /api/showtimings, GET /api/seats, POST /api/book,
+ * POST /api/snacks/order and POST /api/booking/confirm; a share of journeys then cancel,
+ * so seats keep changing hands instead of the shows simply selling out. A share of
+ * journeys all go for the same show, so many clients race for the same seats.
+ *
+ * Configuration:
+ * -Dload.clients (default 32), -Dload.durationSec measured (default 30) after
+ * -Dload.warmupSec (default 5), -Dload.hotShowId (default 1) and -Dload.hotShowPercent of
+ * journeys that target it (default 50), -Dload.maxSeats per booking (default 4),
+ * -Dload.adjacentPercent of bookings asking for adjacent seats (default 30),
+ * -Dload.cancelPercent of journeys that cancel at the end (default 90),
+ * -Dload.snackStock set for every snack before the run (default 1000000),
+ * -Dload.port for the embedded server (default 18080), -Dload.target base URL of a
+ * server to drive instead; the database checks are skipped then.
+ *
+ * Exits with status 1 if any check fails.
+ */
+public final class LoadTest {
+    private static final int CLIENTS = Integer.getInteger("load.clients", 32);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.durationSec", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSec", 5);
+    private static final int HOT_SHOW_ID = Integer.getInteger("load.hotShowId", 1);
+    private static final int HOT_SHOW_PERCENT = Integer.getInteger("load.hotShowPercent", 50);
+    private static final int MAX_SEATS = Integer.getInteger("load.maxSeats", 4);
+    private static final int ADJACENT_PERCENT = Integer.getInteger("load.adjacentPercent", 30);
+    private static final int CANCEL_PERCENT = Integer.getInteger("load.cancelPercent", 90);
+    private static final int SNACK_STOCK = Integer.getInteger("load.snackStock", 1_000_000);
+    private static final int PORT = Integer.getInteger("load.port", 18080);
+    private static final String TARGET = System.getProperty("load.target", "");
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_ERROR_SAMPLES = 10;
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern SHOW_ID = Pattern.compile("\"showId\":(\\d+)");
+    private static final Pattern RESERVATION_ID = Pattern.compile("\"reservationId\":(\\d+)");
+    private static final Pattern SEAT = Pattern.compile("\"rowNo\":(\\d+),\"seatNo\":(\\d+)");
+    // Failures that are the correct answer under contention rather than errors
+    private static final Pattern SOLD_OUT = Pattern.compile(
+        "Not enough seats|No available seats|No block of|Insufficient stock");
+
+    enum Step {
+        MOVIES("GET /api/movies"),
+        SHOWTIMINGS("GET /api/showtimings"),
+        SEATS("GET /api/seats"),
+        BOOK("POST /api/book"),
+        SNACKS("POST /api/snacks/order"),
+        CONFIRM("POST /api/booking/confirm"),
+        CANCEL("POST /api/booking/cancel");
+
+        final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    static final class StepStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    static final class Show {
+        final int id;
+        final int movieId;
+
+        Show(int id, int movieId) {
+            this.id = id;
+            this.movieId = movieId;
+        }
+    }
+
+    private final String base;
+    private final HttpClient http;
+    private final Map<Step, StepStats> stats = new EnumMap<>(Step.class);
+    private final LongAdder journeys = new LongAdder();
+    private final LongAdder seatsBooked = new LongAdder();
+    private final LongAdder seatsCancelled = new LongAdder();
+    // Seats held by reservations the server said were booked and not yet cancelled
+    private final ConcurrentMap<Long, Integer> liveSeats = new ConcurrentHashMap<>();
+    private final LongAdder doubleBookings = new LongAdder();
+    private final Queue<String> errorSamples = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger errorSampleCount = new AtomicInteger();
+    private List<Show> shows;
+    private List<Integer> snackIds;
+    private Show hotShow;
+    private volatile boolean running = true;
+    private volatile boolean recording;
+    private long elapsedNanos;
+
+    private LoadTest(String base) {
+        this.base = base;
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        for (Step step : Step.values()) {
+            stats.put(step, new StepStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean embedded = TARGET.isEmpty();
+        Map<Integer, Integer> seatsBefore = null;
+        Map<Integer, Integer> stockBefore = null;
+        if (embedded) {
+            startEmbeddedServer();
+            try (Connection conn = DriverManager.getConnection(BenchDatabase.URL, "sa", "")) {
+                seatsBefore = readInts(conn, "SELECT ShowID, AvailableSeats FROM show_timings");
+                stockBefore = readInts(conn, "SELECT SnackID, Quantity FROM snackscounter");
+            }
+        }
+
+        LoadTest test = new LoadTest(embedded ? "http://localhost:" + PORT : TARGET.replaceAll("/+$", ""));
+        test.discover();
+        test.run();
+        test.report();
+
+        int failures = test.checkResponses();
+        if (embedded) {
+            // Apply everything still queued so the database reflects every acknowledged request
+            BookingLedger.drain(BookingLedger.DRAIN_TIMEOUT_MILLIS);
+            SnackInventory.flush();
+            try (Connection conn = DriverManager.getConnection(BenchDatabase.URL, "sa", "")) {
+                failures += test.checkDatabase(conn, seatsBefore, stockBefore);
+            }
+            System.out.println();
+            System.out.println("Server log: " + System.getProperty("log.file"));
+        } else {
+            System.out.println("  SKIP  Database checks (only run against the embedded server)");
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void startEmbeddedServer() throws Exception {
+        // A fresh ledger and a private log, so nothing from other runs is replayed or mixed in
+        Path work = Files.createTempDirectory("loadtest");
+        setDefault("ledger.dir", work.resolve("ledger").toString());
+        setDefault("log.file", work.resolve("server.log").toString());
+        setDefault("log.console", "false");
+        System.setProperty("server.port", Integer.toString(PORT));
+        BenchDatabase.start();
+        try (Connection conn = DriverManager.getConnection(BenchDatabase.URL, "sa", "");
+             PreparedStatement stmt = conn.prepareStatement("UPDATE snackscounter SET Quantity = ?")) {
+            stmt.setInt(1, SNACK_STOCK);
+            stmt.executeUpdate();
+        }
+        SimpleServer.main(new String[0]);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // Shows and snacks are found through the API, so a remote target needs no database access
+    private void discover() throws IOException, InterruptedException {
+        shows = new ArrayList<>();
+        for (int movieId : ids(fetch("/api/movies"), ID)) {
+            for (int showId : ids(fetch("/api/showtimings?movieId=" + movieId), SHOW_ID)) {
+                Show show = new Show(showId, movieId);
+                shows.add(show);
+                if (showId == HOT_SHOW_ID || hotShow == null) {
+                    hotShow = show;
+                }
+            }
+        }
+        snackIds = ids(fetch("/api/snacks"), ID);
+        if (shows.isEmpty()) {
+            throw new IllegalStateException("No shows found at " + base);
+        }
+        if (hotShow.id != HOT_SHOW_ID) {
+            System.out.println("Show " + HOT_SHOW_ID + " not found, using show " + hotShow.id + " as the hot show");
+        }
+    }
+
+    private String fetch(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(request(path).GET().build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private static List<Integer> ids(String json, Pattern pattern) {
+        List<Integer> ids = new ArrayList<>();
+        Matcher matcher = pattern.matcher(json);
+        while (matcher.find()) {
+            ids.add(Integer.parseInt(matcher.group(1)));
+        }
+        return ids;
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("Load test: %d clients, %ds warmup + %ds measured, against %s%n",
+            CLIENTS, WARMUP_SECONDS, DURATION_SECONDS, base);
+        System.out.printf("%d shows, %d%% of journeys on show %d, up to %d seats per booking, %d%% cancelled%n",
+            shows.size(), HOT_SHOW_PERCENT, hotShow.id, MAX_SEATS, CANCEL_PERCENT);
+
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Thread client = new Thread(this::runClient, "load-client-" + i);
+            client.start();
+            clients.add(client);
+        }
+        Thread.sleep(WARMUP_SECONDS * 1000L);
+        recording = true;
+        long start = System.nanoTime();
+        Thread.sleep(DURATION_SECONDS * 1000L);
+        recording = false;
+        elapsedNanos = System.nanoTime() - start;
+        running = false;
+        for (Thread client : clients) {
+            client.join();
+        }
+    }
+
+    private void runClient() {
+        while (running) {
+            try {
+                journey(ThreadLocalRandom.current());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void journey(ThreadLocalRandom random) throws InterruptedException {
+        Show show = random.nextInt(100) < HOT_SHOW_PERCENT ? hotShow : shows.get(random.nextInt(shows.size()));
+        if (call(Step.MOVIES, "/api/movies", null) == null
+                || call(Step.SHOWTIMINGS, "/api/showtimings?movieId=" + show.movieId, null) == null
+                || call(Step.SEATS, "/api/seats?showId=" + show.id, null) == null) {
+            return;
+        }
+
+        int seatCount = 1 + random.nextInt(MAX_SEATS);
+        boolean adjacent = random.nextInt(100) < ADJACENT_PERCENT;
+        String booking = call(Step.BOOK, "/api/book", "{\"name\": \"Load Client\", \"age\": 30, \"gender\": \"Other\", " +
+            "\"movieId\": " + show.movieId + ", \"showId\": " + show.id + ", \"seats\": " + seatCount +
+            ", \"adjacent\": " + adjacent + "}");
+        if (booking == null) {
+            return;
+        }
+        Matcher idMatcher = RESERVATION_ID.matcher(booking);
+        if (!idMatcher.find()) {
+            error(Step.BOOK, "no reservationId in " + booking);
+            return;
+        }
+        int reservationId = Integer.parseInt(idMatcher.group(1));
+        List<Long> seats = new ArrayList<>();
+        Matcher seatMatcher = SEAT.matcher(booking);
+        while (seatMatcher.find()) {
+            long key = seatKey(show.id, Integer.parseInt(seatMatcher.group(1)), Integer.parseInt(seatMatcher.group(2)));
+            seats.add(key);
+            Integer holder = liveSeats.putIfAbsent(key, reservationId);
+            if (holder != null) {
+                doubleBookings.increment();
+                error(Step.BOOK, "seat " + describeSeat(key) + " given to reservation " + reservationId +
+                    " while reservation " + holder + " holds it");
+            }
+        }
+        seatsBooked.add(seats.size());
+
+        if (!snackIds.isEmpty()) {
+            int snackId = snackIds.get(random.nextInt(snackIds.size()));
+            call(Step.SNACKS, "/api/snacks/order", "{\"reservationId\": " + reservationId +
+                ", \"orders\": [{\"snackId\": " + snackId + ", \"quantity\": " + (1 + random.nextInt(3)) + "}]}");
+        }
+        call(Step.CONFIRM, "/api/booking/confirm", "{\"reservationId\": " + reservationId + "}");
+
+        if (random.nextInt(100) < CANCEL_PERCENT) {
+            // Given up before asking, so a client that gets a released seat straight away is not flagged
+            for (Long key : seats) {
+                liveSeats.remove(key, reservationId);
+            }
+            if (call(Step.CANCEL, "/api/booking/cancel", "{\"reservationId\": " + reservationId + "}") != null) {
+                seatsCancelled.add(seats.size());
+            }
+        }
+        journeys.increment();
+    }
+
+    /** Sends one request and records it; returns the body if it succeeded, else null. */
+    private String call(Step step, String path, String body) throws InterruptedException {
+        HttpRequest.Builder request = request(path);
+        if (body == null) {
+            request.GET();
+        } else {
+            request.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+        StepStats stepStats = stats.get(step);
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            error(step, e.toString());
+            return null;
+        }
+        if (recording) {
+            stepStats.latency.recordNanos(System.nanoTime() - start);
+        }
+        if (response.statusCode() == 200) {
+            if (recording) {
+                stepStats.ok.increment();
+            }
+            return response.body();
+        }
+        if ((step == Step.BOOK || step == Step.SNACKS) && SOLD_OUT.matcher(response.body()).find()) {
+            if (recording) {
+                stepStats.rejected.increment();
+            }
+        } else {
+            error(step, response.statusCode() + " " + response.body());
+        }
+        return null;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(REQUEST_TIMEOUT);
+    }
+
+    // Errors always count, warmup included, since any of them is a finding
+    private void error(Step step, String detail) {
+        stats.get(step).errors.increment();
+        if (errorSampleCount.getAndIncrement() < MAX_ERROR_SAMPLES) {
+            errorSamples.add(step.label + ": " + (detail.length() > 300 ? detail.substring(0, 300) + "..." : detail));
+        }
+    }
+
+    private static long seatKey(int showId, int row, int seat) {
+        return ((long) showId << 32) | ((long) row << 16) | seat;
+    }
+
+    private static String describeSeat(long key) {
+        return "show " + (key >>> 32) + " row " + ((key >>> 16) & 0xffff) + " seat " + (key & 0xffff);
+    }
+
+    private void report() {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-28s %9s %9s %9s %7s %9s %9s %9s %9s %9s%n",
+            "Step", "Requests", "OK", "Rejected", "Errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        for (Step step : Step.values()) {
+            StepStats s = stats.get(step);
+            LatencyHistogram h = s.latency;
+            total += h.count();
+            System.out.printf("%-28s %9d %9d %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                step.label, h.count(), s.ok.sum(), s.rejected.sum(), s.errors.sum(),
+                h.percentileMicros(0.5) / 1e3, h.percentileMicros(0.9) / 1e3, h.percentileMicros(0.99) / 1e3,
+                h.percentileMicros(0.999) / 1e3, h.maxMicros() / 1e3);
+        }
+        StepStats book = stats.get(Step.BOOK);
+        System.out.println();
+        System.out.printf("Throughput: %.1f requests/s, %.1f bookings/s (%d rejected as sold out), %d journeys completed%n",
+            total / seconds, book.ok.sum() / seconds, book.rejected.sum(), journeys.sum());
+        if (!errorSamples.isEmpty()) {
+            System.out.println();
+            System.out.println("First errors:");
+            errorSamples.forEach(sample -> System.out.println("  " + sample));
+        }
+        System.out.println();
+        System.out.println("Checks:");
+    }
+
+    private int checkResponses() {
+        return check("No seat handed to two live reservations", doubleBookings.sum() == 0,
+            doubleBookings.sum() + " seats were, see the errors above");
+    }
+
+    private int checkDatabase(Connection conn, Map<Integer, Integer> seatsBefore, Map<Integer, Integer> stockBefore)
+            throws SQLException {
+        int failures = 0;
+        int duplicates = readInts(conn,
+            "SELECT 0, COUNT(*) FROM (SELECT ShowID, RowNo, SeatNo FROM tickets " +
+            "GROUP BY ShowID, RowNo, SeatNo HAVING COUNT(*) > 1) d").get(0);
+        failures += check("No seat has two tickets", duplicates == 0, duplicates + " seats do");
+
+        Map<Integer, Integer> seatsAfter = readInts(conn, "SELECT ShowID, AvailableSeats FROM show_timings");
+        Map<Integer, Integer> tickets = readInts(conn, "SELECT ShowID, COUNT(*) FROM tickets GROUP BY ShowID");
+        List<String> negative = new ArrayList<>();
+        List<String> mismatched = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> show : seatsAfter.entrySet()) {
+            int available = show.getValue();
+            int sold = tickets.getOrDefault(show.getKey(), 0);
+            if (available < 0) {
+                negative.add("show " + show.getKey() + " has " + available);
+            }
+            if (seatsBefore.getOrDefault(show.getKey(), 0) - available != sold) {
+                mismatched.add("show " + show.getKey() + ": " + seatsBefore.get(show.getKey()) + " - " + available +
+                    " available != " + sold + " tickets");
+            }
+        }
+        failures += check("No show has negative AvailableSeats", negative.isEmpty(), String.join(", ", negative));
+        failures += check("AvailableSeats matches tickets sold", mismatched.isEmpty(), String.join(", ", mismatched));
+
+        long ticketCount = tickets.values().stream().mapToLong(Integer::longValue).sum();
+        long acknowledged = seatsBooked.sum() - seatsCancelled.sum();
+        failures += check("Tickets match acknowledged bookings", ticketCount == acknowledged,
+            ticketCount + " tickets, " + acknowledged + " seats booked and not cancelled");
+
+        Map<Integer, Integer> stockAfter = readInts(conn, "SELECT SnackID, Quantity FROM snackscounter");
+        Map<Integer, Integer> ordered = readInts(conn, "SELECT SnackID, SUM(Quantity) FROM snackorders GROUP BY SnackID");
+        List<String> negativeStock = new ArrayList<>();
+        List<String> stockMismatch = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> snack : stockAfter.entrySet()) {
+            int snackId = snack.getKey();
+            int quantity = snack.getValue();
+            SnackInventory.Item item = SnackInventory.get(snackId);
+            int inMemory = item == null ? quantity : item.available();
+            if (quantity < 0 || inMemory < 0) {
+                negativeStock.add("snack " + snackId + " has " + quantity + " (in memory " + inMemory + ")");
+            }
+            if (stockBefore.getOrDefault(snackId, 0) - quantity != ordered.getOrDefault(snackId, 0) || inMemory != quantity) {
+                stockMismatch.add("snack " + snackId + ": " + stockBefore.get(snackId) + " - " + quantity +
+                    " != " + ordered.getOrDefault(snackId, 0) + " ordered, " + inMemory + " in memory");
+            }
+        }
+        failures += check("No snack has negative stock", negativeStock.isEmpty(), String.join(", ", negativeStock));
+        failures += check("Snack stock matches orders", stockMismatch.isEmpty(), String.join(", ", stockMismatch));
+        return failures;
+    }
+
+    private static int check(String description, boolean passed, String failure) {
+        System.out.println((passed ? "  PASS  " : "  FAIL  ") + description + (passed ? "" : ": " + failure));
+        return passed ? 0 : 1;
+    }
+
+    // First column as key, second as value
+    private static Map<Integer, Integer> readInts(Connection conn, String sql) throws SQLException {
+        Map<Integer, Integer> values = new TreeMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return values;
+    }
+}
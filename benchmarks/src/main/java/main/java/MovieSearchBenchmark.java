@@ -0,0 +1,64 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * /api/movies/search lookups against a synthetic catalog: a short prefix that matches a
+ * large share of the titles, a two-word autocomplete, and a query that matches nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class MovieSearchBenchmark {
+    private static final String[] WORDS = {
+        "dark", "knight", "star", "storm", "return", "rise", "night", "city", "last", "lost",
+        "shadow", "empire", "river", "silent", "secret", "summer", "winter", "iron", "blue", "red"
+    };
+    private static final String[] GENRES = { "Action", "Sci-Fi", "Drama", "Comedy", "Thriller", "Animation" };
+
+    @Param({ "1000", "10000" })
+    public int movies;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Catalog.Movie> catalog = new ArrayList<>(movies);
+        for (int id = 1; id <= movies; id++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+            catalog.add(new Catalog.Movie(id, title, GENRES[random.nextInt(GENRES.length)], 120, "2020-01-01"));
+        }
+        MovieSearch.sync(catalog);
+    }
+
+    @Benchmark
+    public List<Catalog.Movie> shortPrefix() {
+        return MovieSearch.search("s", 10);
+    }
+
+    @Benchmark
+    public List<Catalog.Movie> autocomplete() {
+        return MovieSearch.search("dark kn", 10);
+    }
+
+    @Benchmark
+    public List<Catalog.Movie> noMatch() {
+        return MovieSearch.search("zebra", 10);
+    }
+}
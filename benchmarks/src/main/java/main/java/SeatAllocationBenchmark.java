@@ -0,0 +1,63 @@
+package main.java;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picking and claiming seats in the in-memory seat map, the part of a booking that runs
+ * before any SQL. Each call reserves a group and releases it again, so the map stays at
+ * the configured occupancy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class SeatAllocationBenchmark {
+    /** Percentage of seats already taken, scattered at random. */
+    @Param({ "0", "50", "90" })
+    public int occupancy;
+
+    @Param({ "4" })
+    public int groupSize;
+
+    @Param({ "false", "true" })
+    public boolean adjacent;
+
+    private SeatMap.ShowSeats seats;
+
+    @Setup
+    public void setUp() {
+        seats = new SeatMap.ShowSeats();
+        Random random = new Random(42);
+        int capacity = SeatAllocator.ROWS * SeatAllocator.SEATS_PER_ROW;
+        int taken = capacity * occupancy / 100;
+        while (taken > 0) {
+            if (seats.tryReserve(random.nextInt(SeatAllocator.ROWS) + 1, random.nextInt(SeatAllocator.SEATS_PER_ROW) + 1)) {
+                taken--;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SeatAllocator.Seat> reserveAndRelease() {
+        List<SeatAllocator.Seat> picked = seats.reserve(groupSize, adjacent);
+        if (picked != null) {
+            seats.releaseAll(picked);
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,64 @@
+package main.java;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GET /api/seats end to end through the handler: seat map lookup and the 100-seat JSON
+ * document, served from the cached rendering while the show is unchanged and rendered
+ * again after every change. The map is loaded from the embedded database during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class SeatsBenchmark {
+    private final SimpleServer.SeatsHandler handler = new SimpleServer.SeatsHandler();
+    private final FakeExchange exchange = new FakeExchange();
+    private SeatMap.ShowSeats seats;
+    private boolean held;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchDatabase.start();
+        // Every odd seat taken, so both branches of the isBooked field are exercised
+        seats = SeatMap.forShow(1);
+        for (int row = 1; row <= SeatAllocator.ROWS; row++) {
+            for (int seat = 1; seat <= SeatAllocator.SEATS_PER_ROW; seat += 2) {
+                seats.mark(row, seat);
+            }
+        }
+    }
+
+    @Benchmark
+    public int seatsJson() throws IOException {
+        handler.handle(exchange.reset("GET", "/api/seats?showId=1", null));
+        return exchange.getResponseCode();
+    }
+
+    @Benchmark
+    public int seatsJsonAfterChange() throws IOException {
+        // Flip a seat that is free in setup, as a hold and its release would
+        if (held) {
+            seats.release(1, 2);
+        } else {
+            seats.tryReserve(1, 2);
+        }
+        held = !held;
+        handler.handle(exchange.reset("GET", "/api/seats?showId=1", null));
+        return exchange.getResponseCode();
+    }
+}
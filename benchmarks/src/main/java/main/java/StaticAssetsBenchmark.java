@@ -0,0 +1,69 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.StaticAssets;
+
+/** MIME type resolution on its own, and a full static file response from the asset cache. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dlog.file=", "-Dlog.console=false" })
+public class StaticAssetsBenchmark {
+    @Param({ "/index.html", "/styles.css", "/script.js", "/images/poster.PNG", "/README" })
+    public String path;
+
+    private final FakeExchange exchange = new FakeExchange();
+    private Path root;
+    private StaticAssets assets;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("bench-webapp");
+        Files.createDirectories(root.resolve("images"));
+        String page = "<!DOCTYPE html><html><body>" + "<p>Now showing</p>".repeat(200) + "</body></html>";
+        Files.write(root.resolve("index.html"), page.getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("styles.css"), "body { margin: 0; }\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("script.js"), "console.log('ready');\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("images/poster.PNG"), new byte[4096]);
+        Files.write(root.resolve("README"), "Static files".getBytes(StandardCharsets.UTF_8));
+        assets = StaticAssets.load(root, false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.walk(root)) {
+            files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String mimeType() {
+        return StaticAssets.mimeType(path);
+    }
+
+    @Benchmark
+    public int serve() throws IOException {
+        FakeExchange request = exchange.reset("GET", path, null);
+        request.getRequestHeaders().set("Accept-Encoding", "gzip, deflate");
+        assets.serve(request);
+        return request.getResponseCode();
+    }
+}
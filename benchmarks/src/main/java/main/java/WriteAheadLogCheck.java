@@ -0,0 +1,224 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import util.WriteAheadLog;
+
+/**
+ * Crash-recovery checks for the booking ledger's write-ahead log. Each scenario writes
+ * records to a fresh directory, leaves the files the way a crash would, opens the log again
+ * and checks what it recovered. Covered: a clean reopen across segments, a torn record at
+ * the tail, a length with no record behind it, a gap in the segment files, an empty log
+ * numbered from a checkpoint, and truncation of applied segments. Also checks that the
+ * LSN callback of append runs before the record can be read.
+ *
+ * Exits with status 1 if any check fails.
+ */
+public final class WriteAheadLogCheck {
+    // Small segments, so a hundred records span several files
+    private static final int SEGMENT_BYTES = 1024;
+    private static final int HEADER_BYTES = 16;
+
+    private WriteAheadLogCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("wal-check");
+        int failures = 0;
+        try {
+            failures += reopen(root.resolve("reopen"));
+            failures += tornTail(root.resolve("torn"));
+            failures += lengthWithoutRecord(root.resolve("length"));
+            failures += segmentGap(root.resolve("gap"));
+            failures += emptyFromCheckpoint(root.resolve("checkpoint"));
+            failures += truncate(root.resolve("truncate"));
+            failures += lsnBeforeVisible(root.resolve("callback"));
+        } finally {
+            delete(root);
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static int reopen(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        appendAll(log, 1, 50);
+        WriteAheadLog reopened = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        int failures = check("Reopen keeps every record across " + segments(dir).size() + " segments",
+            readAll(reopened, 1).equals(payloads(1, 50)), "read back " + readAll(reopened, 1).size() + " of 50");
+        return failures + check("Reopen carries on numbering", reopened.append(payload(51)) == 51,
+            "durable LSN " + reopened.durableLsn());
+    }
+
+    private static int tornTail(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        appendAll(log, 1, 5);
+        // A whole header and payload, but the checksum does not match
+        Path segment = last(segments(dir));
+        int tail = 5 * (HEADER_BYTES + payload(1).length);
+        write(segment, tail, record(6, payload(6), 0xBAD));
+
+        WriteAheadLog reopened = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        int failures = check("Torn record at the tail is discarded", reopened.durableLsn() == 5,
+            "durable LSN " + reopened.durableLsn());
+        long lsn = reopened.append(payload(6));
+        List<String> read = readAll(WriteAheadLog.open(dir, SEGMENT_BYTES, 1), 1);
+        return failures + check("Append after a torn tail reuses its LSN and reads back",
+            lsn == 6 && read.equals(payloads(1, 6)), "appended LSN " + lsn + ", read " + read);
+    }
+
+    private static int lengthWithoutRecord(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        appendAll(log, 1, 3);
+        Path segment = last(segments(dir));
+        int tail = 3 * (HEADER_BYTES + payload(1).length);
+        // Only the length made it to disk
+        write(segment, tail, ByteBuffer.allocate(4).putInt(0, 12).array());
+
+        WriteAheadLog reopened = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        return check("Length with no record behind it is discarded",
+            reopened.durableLsn() == 3 && readAll(reopened, 1).equals(payloads(1, 3)),
+            "durable LSN " + reopened.durableLsn());
+    }
+
+    private static int segmentGap(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        appendAll(log, 1, 120);
+        List<Path> files = segments(dir);
+        if (files.size() < 3) {
+            return check("Gap in the segment files", false, "only " + files.size() + " segments were written");
+        }
+        // A middle segment lost; the records after the gap cannot be trusted
+        Files.delete(files.get(1));
+        WriteAheadLog reopened = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        long lastKept = startLsn(files.get(1)) - 1;
+        return check("Segments after a gap are discarded",
+            reopened.durableLsn() == lastKept && segments(dir).size() == 1,
+            "durable LSN " + reopened.durableLsn() + " (expected " + lastKept + "), " + segments(dir).size() + " segments left");
+    }
+
+    private static int emptyFromCheckpoint(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 42);
+        int failures = check("Empty log starts after the checkpoint", log.durableLsn() == 41,
+            "durable LSN " + log.durableLsn());
+        long lsn = log.append(payload(42));
+        return failures + check("First record gets the checkpoint's next LSN", lsn == 42, "got " + lsn);
+    }
+
+    private static int truncate(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        appendAll(log, 1, 60);
+        int before = segments(dir).size();
+        log.truncate(60);
+        int after = segments(dir).size();
+        WriteAheadLog reopened = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        long first = startLsn(segments(dir).get(0));
+        return check("Truncate deletes applied segments and keeps the current one",
+            after == 1 && before > 1 && reopened.durableLsn() == 60 && readAll(reopened, first).equals(payloads(first, 60)),
+            before + " segments before, " + after + " after, durable LSN " + reopened.durableLsn());
+    }
+
+    private static int lsnBeforeVisible(Path dir) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(dir, SEGMENT_BYTES, 1);
+        WriteAheadLog.Cursor cursor = log.cursor(1);
+        AtomicLong assigned = new AtomicLong();
+        List<String> seen = new ArrayList<>();
+        long lsn = log.append(payload(1), value -> {
+            assigned.set(value);
+            // Not readable yet while the callback runs
+            if (cursor.next() != null) {
+                seen.add("visible");
+            }
+        });
+        return check("LSN callback runs before the record is readable",
+            assigned.get() == lsn && seen.isEmpty() && cursor.next() != null,
+            "callback got " + assigned.get() + " for LSN " + lsn + (seen.isEmpty() ? "" : ", record was already visible"));
+    }
+
+    private static void appendAll(WriteAheadLog log, long from, long to) throws IOException {
+        for (long i = from; i <= to; i++) {
+            long lsn = log.append(payload(i));
+            if (lsn != i) {
+                throw new IllegalStateException("Expected LSN " + i + " but got " + lsn);
+            }
+        }
+    }
+
+    private static List<String> readAll(WriteAheadLog log, long from) {
+        List<String> read = new ArrayList<>();
+        WriteAheadLog.Cursor cursor = log.cursor(from);
+        WriteAheadLog.Record record;
+        while ((record = cursor.next()) != null) {
+            read.add(new String(record.payload, StandardCharsets.UTF_8));
+        }
+        return read;
+    }
+
+    // Same length for every LSN up to 99999, so record offsets are easy to work out
+    private static byte[] payload(long lsn) {
+        return String.format("record-%05d", lsn).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(long from, long to) {
+        List<String> payloads = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            payloads.add(new String(payload(i), StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    // Header layout of WriteAheadLog: length, CRC, LSN, payload
+    private static byte[] record(long lsn, byte[] payload, int crc) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt(crc).putLong(lsn).put(payload);
+        return buffer.array();
+    }
+
+    private static void write(Path file, int position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+            channel.force(true);
+        }
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "segment-*.wal")) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        files.sort(Comparator.comparingLong(WriteAheadLogCheck::startLsn));
+        return files;
+    }
+
+    private static long startLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - ".wal".length()));
+    }
+
+    private static Path last(List<Path> paths) {
+        return paths.get(paths.size() - 1);
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static int check(String description, boolean passed, String failure) {
+        System.out.println((passed ? "  PASS  " : "  FAIL  ") + description + (passed ? "" : ": " + failure));
+        return passed ? 0 : 1;
+    }
+}
@@ -0,0 +1,23 @@
+-- Embedded stand-in for database.sql, loaded into in-memory H2 by BenchDatabase
+CREATE TABLE movie (MovieID INT AUTO_INCREMENT PRIMARY KEY, Title VARCHAR(100), Genre VARCHAR(50), Duration INT, ReleaseDate DATE);
+CREATE TABLE show_timings (ShowID INT AUTO_INCREMENT PRIMARY KEY, MovieID INT, ShowTime TIME, ShowDate DATE, ScreenNo INT, AvailableSeats INT);
+CREATE TABLE customer (CustomerID INT AUTO_INCREMENT PRIMARY KEY, Name VARCHAR(100), Age INT, Gender VARCHAR(10), Email VARCHAR(100), Password VARCHAR(100));
+CREATE TABLE reservation (ReservationID INT AUTO_INCREMENT PRIMARY KEY, DateTime DATETIME, Mode VARCHAR(20), CustomerID INT, MovieID INT, Status VARCHAR(20));
+CREATE TABLE reservations (ID INT AUTO_INCREMENT PRIMARY KEY, ShowID INT, SeatNumber INT);
+CREATE TABLE tickets (TicketID INT AUTO_INCREMENT PRIMARY KEY, SeatNo INT, RowNo INT, ScreenNo INT, ReservationID INT, Price DECIMAL(10,2), ShowID INT);
+CREATE TABLE snackscounter (SnackID INT AUTO_INCREMENT PRIMARY KEY, ItemName VARCHAR(100), Price DECIMAL(10,2), Quantity INT);
+CREATE TABLE snackorders (OrderID INT AUTO_INCREMENT PRIMARY KEY, ReservationID INT, SnackID INT, Quantity INT, EmployeeID INT);
+CREATE TABLE employees (EmployeeID INT AUTO_INCREMENT PRIMARY KEY, Name VARCHAR(100), Position VARCHAR(50), Status VARCHAR(10) DEFAULT 'Active');
+INSERT INTO movie (Title, Genre, Duration, ReleaseDate) VALUES ('Inception','Sci-Fi',148,'2010-07-16'),('The Dark Knight','Action',152,'2008-07-18'),('Interstellar','Sci-Fi',169,'2014-11-07');
+INSERT INTO show_timings (MovieID, ShowTime, ShowDate, ScreenNo, AvailableSeats) VALUES (1,'18:00:00','2026-10-20',1,100),(1,'21:00:00','2026-10-20',2,100),(2,'19:00:00','2026-10-21',1,100);
+INSERT INTO snackscounter (ItemName, Price, Quantity) VALUES ('Popcorn',120.00,100),('Nachos',180.00,45),('Soda',80.00,5);
+INSERT INTO employees (Name, Position) VALUES ('Raj Kumar','Staff'),('Priya Singh','Staff');
+CREATE TABLE IF NOT EXISTS snack_stock_journal (
+    Seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    SnackID INT NOT NULL,
+    Delta INT NOT NULL,
+    FOREIGN KEY (SnackID) REFERENCES snackscounter(SnackID)
+);
+CREATE TABLE IF NOT EXISTS booking_ledger_checkpoint (Id INT PRIMARY KEY, AppliedLsn BIGINT NOT NULL);
+CREATE TABLE IF NOT EXISTS price_rules (RuleID INT AUTO_INCREMENT PRIMARY KEY, ScreenNo INT NULL, FromTime TIME NULL, ToTime TIME NULL, FromRow INT NULL, ToRow INT NULL, Price DECIMAL(10,2) NOT NULL);
+INSERT INTO price_rules (ScreenNo, FromTime, ToTime, FromRow, ToRow, Price) VALUES (NULL,NULL,NULL,NULL,NULL,200.00),(NULL,NULL,NULL,4,5,250.00),(NULL,'18:00:00',NULL,NULL,NULL,240.00);
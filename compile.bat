@@ -2,7 +2,7 @@
 if not exist "target\classes" mkdir target\classes
 
 echo Compiling Java files...
-javac -d target\classes -cp "lib/*;src/main/java" src/main/java/util/DatabaseConnection.java src/main/java/main/java/SimpleServer.java
+javac -d target\classes -cp "lib/*;src/main/java" src/main/java/util/*.java src/main/java/main/java/*.java
 
 if %errorlevel% equ 0 (
     echo Compilation successful!
@@ -0,0 +1,7 @@
+-- Highest booking ledger LSN whose changes are in the database. The server advances it
+-- in the same transaction as the changes, and replays the ledger from the next LSN at
+-- startup. The ledger itself lives on disk under -Dledger.dir.
+CREATE TABLE IF NOT EXISTS booking_ledger_checkpoint (
+    Id INT PRIMARY KEY,
+    AppliedLsn BIGINT NOT NULL
+);
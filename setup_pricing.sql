@@ -0,0 +1,19 @@
+-- Ticket price rules. Any of screen, show time window [FromTime, ToTime) and seat rows
+-- [FromRow, ToRow] may be left NULL to match everything. The server loads the rules at
+-- startup and uses the most specific one that matches each seat, the newest on a tie.
+-- Edit them through /api/admin/pricing so the server picks up changes at once.
+CREATE TABLE IF NOT EXISTS price_rules (
+    RuleID INT AUTO_INCREMENT PRIMARY KEY,
+    ScreenNo INT NULL,
+    FromTime TIME NULL,
+    ToTime TIME NULL,
+    FromRow INT NULL,
+    ToRow INT NULL,
+    Price DECIMAL(10,2) NOT NULL
+);
+
+-- Sample rules: a flat base price, dearer back rows and evening shows
+INSERT INTO price_rules (ScreenNo, FromTime, ToTime, FromRow, ToRow, Price) VALUES
+(NULL, NULL, NULL, NULL, NULL, 200.00),
+(NULL, NULL, NULL, 4, 5, 250.00),
+(NULL, '18:00:00', NULL, NULL, NULL, 240.00);
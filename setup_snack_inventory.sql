@@ -0,0 +1,9 @@
+-- Journal of snack stock changes not yet applied to snackscounter.Quantity.
+-- Orders, cancellations and admin edits insert rows here in their own transaction;
+-- the server folds them into snackscounter in the background and deletes them.
+CREATE TABLE IF NOT EXISTS snack_stock_journal (
+    Seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    SnackID INT NOT NULL,
+    Delta INT NOT NULL,
+    FOREIGN KEY (SnackID) REFERENCES snackscounter(SnackID)
+);
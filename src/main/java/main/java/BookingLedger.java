@@ -0,0 +1,452 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import util.WriteAheadLog;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Booking changes that are acknowledged once they are in the write-ahead log, before they
+ * reach MySQL. Snack orders and confirmations go through here; a background applier writes
+ * them to the database in large batches, advancing a checkpoint row in the same transaction,
+ * and anything not yet applied is replayed from the log at startup.
+ *
+ * Bookings and cancellations stay synchronous: a booking needs the IDs MySQL generates, and
+ * a cancellation has to see every earlier change to the reservation. Readers that need a
+ * reservation's latest state call {@link #awaitReservation} first.
+ *
+ * If the database is down at startup the ledger is opened in the background once it is
+ * back; until then new changes and reads that depend on it are refused. At shutdown the
+ * ledger is drained for a bounded time, and whatever is left is replayed on the next start.
+ */
+final class BookingLedger {
+    private static final Log LOG = Log.get(BookingLedger.class);
+    static final Path DIR = Paths.get(System.getProperty("ledger.dir", "data/ledger"));
+    static final int SEGMENT_BYTES = Integer.getInteger("ledger.segmentBytes", 16 * 1024 * 1024);
+    static final int APPLY_BATCH = Integer.getInteger("ledger.applyBatch", 1_000);
+    static final long READ_WAIT_MILLIS = Long.getLong("ledger.readWaitMs", 5_000L);
+    static final long DRAIN_TIMEOUT_MILLIS = Long.getLong("ledger.drainTimeoutMs", 10_000L);
+
+    private static final byte SNACK_ORDER = 1;
+    private static final byte CONFIRM = 2;
+
+    private static final long RETRY_DELAY_MILLIS = 1_000L;
+    private static final long OPEN_RETRY_MILLIS = 5_000L;
+
+    private static final class Event {
+        final long lsn;
+        final byte type;
+        final int reservationId;
+        final int employeeId;
+        final int[] snackIds;
+        final int[] quantities;
+
+        Event(long lsn, byte type, int reservationId, int employeeId, int[] snackIds, int[] quantities) {
+            this.lsn = lsn;
+            this.type = type;
+            this.reservationId = reservationId;
+            this.employeeId = employeeId;
+            this.snackIds = snackIds;
+            this.quantities = quantities;
+        }
+    }
+
+    private static WriteAheadLog log;
+    // Set once the log is open and what a previous run left has been replayed
+    private static volatile boolean open;
+    private static WriteAheadLog.Cursor cursor;
+    private static volatile long appliedLsn;
+    // Applying stops retrying past this time; set by drain() at shutdown
+    private static volatile long giveUpAt = Long.MAX_VALUE;
+
+    // Highest LSN logged for each reservation; entries go once they are applied
+    private static final ConcurrentMap<Integer, Long> LATEST_BY_RESERVATION = new ConcurrentHashMap<>();
+    // Guards the cursor and the apply transaction
+    private static final Object APPLY_LOCK = new Object();
+    // Applier waits here for new records, readers for records to be applied
+    private static final Object PROGRESS = new Object();
+
+    private static Thread applier;
+
+    private BookingLedger() {
+    }
+
+    /**
+     * Opens the log, applies anything a previous run left unapplied and starts the applier.
+     * Must run before anything reads snack stock or order rows.
+     */
+    static synchronized void open() throws IOException, SQLException {
+        if (log != null) {
+            return;
+        }
+        long checkpoint = readCheckpoint();
+        log = WriteAheadLog.open(DIR, SEGMENT_BYTES, checkpoint + 1);
+        if (log.durableLsn() < checkpoint) {
+            throw new IllegalStateException("Booking ledger in " + DIR + " ends at LSN " + log.durableLsn() +
+                " but the database has applied up to " + checkpoint);
+        }
+        cursor = log.cursor(checkpoint + 1);
+        appliedLsn = checkpoint;
+
+        int replayed = 0;
+        int applied;
+        while ((applied = applyNextBatch()) > 0) {
+            replayed += applied;
+        }
+        if (replayed > 0) {
+            LOG.info("Replayed {} booking ledger events", replayed);
+        }
+        open = true;
+
+        applier = new Thread(BookingLedger::runApplier, "booking-ledger-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * For when {@link #open} failed at startup: keeps trying in the background until the
+     * database is reachable, then replays and starts the applier as open() would.
+     */
+    static void openInBackground() {
+        Thread opener = new Thread(() -> {
+            while (!isOpen()) {
+                sleepQuietly(OPEN_RETRY_MILLIS);
+                try {
+                    open();
+                    LOG.info("Booking ledger opened");
+                } catch (IOException | SQLException e) {
+                    LOG.debug("Booking ledger still cannot be opened: {}", e.getMessage());
+                }
+            }
+        }, "booking-ledger-opener");
+        opener.setDaemon(true);
+        opener.start();
+    }
+
+    /** True once the log is open and replayed; until then nothing may read snack stock or order rows. */
+    static boolean isOpen() {
+        return open;
+    }
+
+    /** Logs a snack order; on return it is durable and will reach snackorders. */
+    static void snackOrder(int reservationId, int employeeId, List<Requests.SnackOrderLine> lines) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + lines.size() * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SNACK_ORDER);
+        out.writeInt(reservationId);
+        out.writeInt(employeeId);
+        out.writeInt(lines.size());
+        for (Requests.SnackOrderLine line : lines) {
+            out.writeInt(line.snackId);
+            out.writeInt(line.quantity);
+        }
+        append(reservationId, bytes.toByteArray());
+    }
+
+    /** Logs a confirmation; on return it is durable and will reach the reservation row. */
+    static void confirm(int reservationId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CONFIRM);
+        out.writeInt(reservationId);
+        append(reservationId, bytes.toByteArray());
+    }
+
+    private static void append(int reservationId, byte[] payload) throws IOException {
+        if (!open) {
+            throw new IOException("Booking ledger is not open yet, the database is unreachable");
+        }
+        // Recorded as the LSN is assigned, so awaitReservation sees every record the applier can
+        log.append(payload, lsn -> LATEST_BY_RESERVATION.merge(reservationId, lsn, Math::max));
+        synchronized (PROGRESS) {
+            PROGRESS.notifyAll();
+        }
+    }
+
+    /** Waits until every logged change to the reservation is in the database. */
+    static void awaitReservation(int reservationId) throws SQLException {
+        if (!open) {
+            // Changes from the last run may not be replayed yet
+            throw new SQLException("Booking ledger is not open yet, the database is unreachable");
+        }
+        Long lsn = LATEST_BY_RESERVATION.get(reservationId);
+        if (lsn == null || lsn <= appliedLsn) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + READ_WAIT_MILLIS;
+        synchronized (PROGRESS) {
+            while (appliedLsn < lsn) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out waiting for earlier changes to reservation " +
+                        reservationId + " to be saved");
+                }
+                try {
+                    PROGRESS.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for reservation " + reservationId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies what has been logged, for at most {@code timeoutMillis}; used at shutdown.
+     * Past the deadline a failed batch is not retried. What is left is already durable in
+     * the log and is replayed by the next {@link #open}.
+     */
+    static void drain(long timeoutMillis) {
+        if (!open) {
+            return;
+        }
+        giveUpAt = System.currentTimeMillis() + timeoutMillis;
+        int applied;
+        do {
+            applied = applyNextBatch();
+        } while (applied > 0 && System.currentTimeMillis() < giveUpAt);
+        if (log.durableLsn() > appliedLsn) {
+            LOG.warn("Booking ledger not fully applied at shutdown, LSNs {} to {} will be replayed on restart",
+                appliedLsn + 1, log.durableLsn());
+        }
+    }
+
+    private static void runApplier() {
+        while (true) {
+            try {
+                int applied = applyNextBatch();
+                if (applied < 0) {
+                    // Shutting down
+                    return;
+                }
+                if (applied == 0) {
+                    synchronized (PROGRESS) {
+                        if (log.durableLsn() <= appliedLsn) {
+                            PROGRESS.wait(100);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Booking ledger applier failed", e);
+                sleepQuietly(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    // Reading and applying under one lock keeps batches, and so the checkpoint, in order.
+    // Returns -1 once it gave up at shutdown; the batch it read is left for replay
+    private static int applyNextBatch() {
+        synchronized (APPLY_LOCK) {
+            List<Event> batch = new ArrayList<>();
+            WriteAheadLog.Record record;
+            while (batch.size() < APPLY_BATCH && (record = cursor.next()) != null) {
+                batch.add(decode(record));
+            }
+            if (!batch.isEmpty() && !applyWithRetry(batch)) {
+                return -1;
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * Applies a batch in one transaction. A constraint violation means some event can never
+     * be applied, so the batch is split up and that event dropped. Orders are only logged for
+     * reservations that exist, so that takes a reservation cancelled while its order was in
+     * flight, or a damaged log. Anything else is retried until the database is back, since
+     * the events have already been acknowledged, or until {@link #drain} gives up; returns
+     * false in that case.
+     */
+    private static boolean applyWithRetry(List<Event> batch) {
+        while (true) {
+            try {
+                apply(batch);
+                return true;
+            } catch (SQLException e) {
+                if (isConstraintViolation(e)) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= giveUpAt) {
+                    return false;
+                }
+                LOG.warn("Could not apply booking ledger, retrying: {}", e.getMessage());
+                sleepQuietly(RETRY_DELAY_MILLIS);
+            }
+        }
+        for (Event event : batch) {
+            List<Event> single = new ArrayList<>(1);
+            single.add(event);
+            while (true) {
+                try {
+                    try {
+                        apply(single);
+                    } catch (SQLException e) {
+                        if (!isConstraintViolation(e)) {
+                            throw e;
+                        }
+                        drop(event, e);
+                    }
+                    break;
+                } catch (SQLException e) {
+                    if (System.currentTimeMillis() >= giveUpAt) {
+                        return false;
+                    }
+                    LOG.warn("Could not apply booking ledger, retrying: {}", e.getMessage());
+                    sleepQuietly(RETRY_DELAY_MILLIS);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void apply(List<Event> batch) throws SQLException {
+        long lastLsn = batch.get(batch.size() - 1).lsn;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Map<Integer, Integer> stockDeltas = new HashMap<>();
+            try (PreparedStatement orderStmt = conn.prepareStatement(Sql.INSERT_SNACK_ORDER);
+                 PreparedStatement confirmStmt = conn.prepareStatement(Sql.CONFIRM_RESERVATION)) {
+                boolean orders = false;
+                boolean confirms = false;
+                for (Event event : batch) {
+                    if (event.type == SNACK_ORDER) {
+                        for (int i = 0; i < event.snackIds.length; i++) {
+                            orderStmt.setInt(1, event.reservationId);
+                            orderStmt.setInt(2, event.snackIds[i]);
+                            orderStmt.setInt(3, event.quantities[i]);
+                            orderStmt.setInt(4, event.employeeId);
+                            orderStmt.addBatch();
+                            stockDeltas.merge(event.snackIds[i], -event.quantities[i], Integer::sum);
+                        }
+                        orders = true;
+                    } else {
+                        confirmStmt.setInt(1, event.reservationId);
+                        confirmStmt.addBatch();
+                        confirms = true;
+                    }
+                }
+                if (orders) {
+                    orderStmt.executeBatch();
+                    SnackInventory.journal(conn, stockDeltas);
+                }
+                if (confirms) {
+                    confirmStmt.executeBatch();
+                }
+            }
+            advanceCheckpoint(conn, lastLsn);
+            conn.commit();
+        }
+        applied(lastLsn);
+    }
+
+    // An event that can never be applied still moves the checkpoint past it
+    private static void drop(Event event, SQLException cause) throws SQLException {
+        LOG.error("Dropping booking ledger event {} for reservation {}: {}",
+            event.lsn, event.reservationId, cause.getMessage());
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            advanceCheckpoint(conn, event.lsn);
+            conn.commit();
+        }
+        if (event.type == SNACK_ORDER) {
+            // The order was never saved, so its stock is available again
+            Map<Integer, Integer> quantities = new HashMap<>();
+            for (int i = 0; i < event.snackIds.length; i++) {
+                quantities.merge(event.snackIds[i], event.quantities[i], Integer::sum);
+            }
+            SnackInventory.release(quantities);
+            quantities.forEach((snackId, quantity) -> Trending.snackOrdered(snackId, -quantity));
+        }
+        applied(event.lsn);
+    }
+
+    private static void applied(long lsn) {
+        synchronized (PROGRESS) {
+            appliedLsn = lsn;
+            PROGRESS.notifyAll();
+        }
+        LATEST_BY_RESERVATION.values().removeIf(latest -> latest <= lsn);
+        try {
+            log.truncate(lsn);
+        } catch (IOException e) {
+            LOG.warn("Could not delete applied booking ledger segments: {}", e.getMessage());
+        }
+    }
+
+    private static long readCheckpoint() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.READ_CHECKPOINT);
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getLong("AppliedLsn");
+            }
+        }
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.INSERT_CHECKPOINT)) {
+            stmt.executeUpdate();
+        }
+        return 0;
+    }
+
+    private static void advanceCheckpoint(Connection conn, long lsn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(Sql.ADVANCE_CHECKPOINT)) {
+            stmt.setLong(1, lsn);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static Event decode(WriteAheadLog.Record record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload));
+            byte type = in.readByte();
+            int reservationId = in.readInt();
+            if (type == CONFIRM) {
+                return new Event(record.lsn, type, reservationId, 0, null, null);
+            }
+            if (type != SNACK_ORDER) {
+                throw new IllegalStateException("Unknown booking ledger event type " + type + " at LSN " + record.lsn);
+            }
+            int employeeId = in.readInt();
+            int count = in.readInt();
+            int[] snackIds = new int[count];
+            int[] quantities = new int[count];
+            for (int i = 0; i < count; i++) {
+                snackIds[i] = in.readInt();
+                quantities[i] = in.readInt();
+            }
+            return new Event(record.lsn, type, reservationId, employeeId, snackIds, quantities);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable booking ledger event at LSN " + record.lsn, e);
+        }
+    }
+
+    private static boolean isConstraintViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Cancels reservations in chunks, each chunk in one transaction made of set-based
+ * statements: one query for the tickets, one for the snacks to restock, a DELETE per table
+ * and one seat-restore UPDATE per show. show_timings is updated last so its row locks are
+ * held only until the chunk commits, not for the whole cancellation.
+ *
+ * Bulk jobs run one at a time in the background and report their progress; a single
+ * cancellation runs the same transaction directly with a chunk of one.
+ */
+final class BulkCancellation {
+    private static final Log LOG = Log.get(BulkCancellation.class);
+    static final int CHUNK_SIZE = Integer.getInteger("cancel.chunkSize", 200);
+
+    // Finished jobs are forgotten oldest first beyond this many
+    private static final int MAX_JOBS = 100;
+
+    static final class Job {
+        final String id;
+        final int showId;
+        // The submitting request's correlation ID, so the job's log lines can be traced to it
+        final String requestId = Log.correlationId();
+        final long createdAt = System.currentTimeMillis();
+        volatile String status = "queued";
+        volatile int total;
+        volatile int processed;
+        volatile int cancelled;
+        volatile int seatsRestored;
+        volatile String error;
+        volatile long finishedAt;
+
+        private Job(String id, int showId) {
+            this.id = id;
+            this.showId = showId;
+        }
+
+        boolean finished() {
+            return finishedAt != 0;
+        }
+    }
+
+    /** What one chunk removed. */
+    static final class Result {
+        final int reservations;
+        final int tickets;
+        // Movies whose shows got seats back
+        final Set<Integer> movies;
+
+        Result(int reservations, int tickets, Set<Integer> movies) {
+            this.reservations = reservations;
+            this.tickets = tickets;
+            this.movies = movies;
+        }
+    }
+
+    private static final Map<String, Job> JOBS = new LinkedHashMap<String, Job>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            return size() > MAX_JOBS && eldest.getValue().finished();
+        }
+    };
+
+    private static final ExecutorService RUNNER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "bulk-cancel");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private BulkCancellation() {
+    }
+
+    /**
+     * Queues a job for the given reservations, or for every reservation with tickets for
+     * {@code showId} when it is positive. {@code afterChunk} gets the result of each commit.
+     */
+    static Job submit(List<Integer> reservationIds, int showId, Consumer<Result> afterChunk) {
+        Job job = new Job(UUID.randomUUID().toString(), showId);
+        job.total = reservationIds.size();
+        synchronized (JOBS) {
+            JOBS.put(job.id, job);
+        }
+        List<Integer> ids = new ArrayList<>(reservationIds);
+        RUNNER.execute(() -> run(job, ids, afterChunk));
+        return job;
+    }
+
+    static Job get(String id) {
+        synchronized (JOBS) {
+            return JOBS.get(id);
+        }
+    }
+
+    private static void run(Job job, List<Integer> reservationIds, Consumer<Result> afterChunk) {
+        job.status = "running";
+        Log.Scope scope = Log.correlate(job.requestId);
+        try {
+            if (job.showId > 0) {
+                reservationIds = reservationsForShow(job.showId);
+                job.total = reservationIds.size();
+            }
+            for (int from = 0; from < reservationIds.size(); from += CHUNK_SIZE) {
+                List<Integer> chunk = reservationIds.subList(from, Math.min(from + CHUNK_SIZE, reservationIds.size()));
+                Result result = cancel(chunk);
+                job.processed += chunk.size();
+                job.cancelled += result.reservations;
+                job.seatsRestored += result.tickets;
+                afterChunk.accept(result);
+            }
+            job.status = "completed";
+            LOG.info("Bulk cancellation {} cancelled {} reservations", job.id, job.cancelled);
+        } catch (Exception e) {
+            // Chunks already committed stay cancelled; processed says how far it got
+            LOG.error("Bulk cancellation {} failed", job.id, e);
+            job.error = e.getMessage();
+            job.status = "failed";
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+            scope.close();
+        }
+    }
+
+    private static List<Integer> reservationsForShow(int showId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.SHOW_RESERVATIONS)) {
+            stmt.setInt(1, showId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt("ReservationID"));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Cancels the reservations in one transaction: restocks their snacks, deletes their
+     * snack orders, tickets and reservation rows, and gives their seats back to the shows.
+     * Memory state (seat map, snack stock, trending, show demand) is updated once it commits.
+     *
+     * The reservation rows are locked first, so of two cancellations of the same reservation
+     * (a single cancel and a bulk job, say) the second waits and then finds it gone; only
+     * what this transaction deletes is restored.
+     */
+    static Result cancel(List<Integer> reservationIds) throws SQLException {
+        if (reservationIds.isEmpty()) {
+            return new Result(0, 0, Collections.emptySet());
+        }
+        // Snack orders and confirmations still in the ledger go in before this deletes them
+        for (int reservationId : reservationIds) {
+            BookingLedger.awaitReservation(reservationId);
+        }
+        Map<Integer, List<SeatAllocator.Seat>> seatsByShow = new TreeMap<>();
+        Map<Integer, Integer> ticketsByMovie = new HashMap<>();
+        Map<Integer, Integer> cancelledSnacks = new HashMap<>();
+        int tickets = 0;
+        int reservations;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Reads below start after the lock is granted, so they see any cancellation that got there first
+                List<Integer> locked = lock(conn, reservationIds);
+                if (locked.isEmpty()) {
+                    conn.commit();
+                    return new Result(0, 0, Collections.emptySet());
+                }
+                reservationIds = locked;
+                String in = placeholders(reservationIds.size());
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT t.ShowID, t.RowNo, t.SeatNo, s.MovieID FROM tickets t " +
+                        "JOIN show_timings s ON t.ShowID = s.ShowID WHERE t.ReservationID IN " + in)) {
+                    bind(stmt, reservationIds);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            seatsByShow.computeIfAbsent(rs.getInt("ShowID"), id -> new ArrayList<>())
+                                .add(new SeatAllocator.Seat(rs.getInt("RowNo"), rs.getInt("SeatNo")));
+                            ticketsByMovie.merge(rs.getInt("MovieID"), 1, Integer::sum);
+                            tickets++;
+                        }
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT SnackID, SUM(Quantity) AS Quantity FROM snackorders " +
+                        "WHERE ReservationID IN " + in + " GROUP BY SnackID")) {
+                    bind(stmt, reservationIds);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            cancelledSnacks.put(rs.getInt("SnackID"), rs.getInt("Quantity"));
+                        }
+                    }
+                }
+                SnackInventory.journal(conn, cancelledSnacks);
+
+                delete(conn, "DELETE FROM snackorders WHERE ReservationID IN " + in, reservationIds);
+                int deletedTickets = delete(conn, "DELETE FROM tickets WHERE ReservationID IN " + in, reservationIds);
+                reservations = delete(conn, "DELETE FROM reservation WHERE ReservationID IN " + in, reservationIds);
+                if (deletedTickets != tickets || reservations != reservationIds.size()) {
+                    // Never restore seats or stock that were not taken back here
+                    throw new SQLException("Reservations changed while being cancelled: deleted " + reservations + " of "
+                        + reservationIds.size() + " reservations and " + deletedTickets + " of " + tickets + " tickets");
+                }
+
+                // Last, and in ShowID order, so concurrent chunks lock show rows in the same order
+                try (PreparedStatement stmt = conn.prepareStatement(Sql.RESTORE_SEATS)) {
+                    for (Map.Entry<Integer, List<SeatAllocator.Seat>> entry : seatsByShow.entrySet()) {
+                        stmt.setInt(1, entry.getValue().size());
+                        stmt.setInt(2, entry.getKey());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        for (Map.Entry<Integer, List<SeatAllocator.Seat>> entry : seatsByShow.entrySet()) {
+            SeatMap.ShowSeats showSeats = SeatMap.forShow(entry.getKey());
+            if (showSeats != null) {
+                showSeats.releaseAll(entry.getValue());
+            }
+            ShowDemand.released(entry.getKey(), entry.getValue().size());
+        }
+        ticketsByMovie.forEach((movieId, count) -> Trending.movieTicketsSold(movieId, -count));
+        SnackInventory.release(cancelledSnacks);
+        cancelledSnacks.forEach((snackId, quantity) -> Trending.snackOrdered(snackId, -quantity));
+        return new Result(reservations, tickets, ticketsByMovie.keySet());
+    }
+
+    // The given reservations that still exist, locked until the transaction ends
+    private static List<Integer> lock(Connection conn, List<Integer> reservationIds) throws SQLException {
+        List<Integer> locked = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT ReservationID FROM reservation WHERE ReservationID IN "
+                + placeholders(reservationIds.size()) + " ORDER BY ReservationID FOR UPDATE")) {
+            bind(stmt, reservationIds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    locked.add(rs.getInt(1));
+                }
+            }
+        }
+        return locked;
+    }
+
+    private static int delete(Connection conn, String sql, List<Integer> reservationIds) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, reservationIds);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static void bind(PreparedStatement stmt, List<Integer> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            stmt.setInt(i + 1, values.get(i));
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.KeysetIndex;
+import util.Log;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Movies and show timings indexed in memory for the paginated catalog listings. Each sort
+ * order is a {@link KeysetIndex}, kept whole and per genre for movies, and per movie,
+ * genre and screen for show timings, so a page is a binary search to the cursor plus a
+ * walk over the matching partition. Seats left come live from {@link ShowDemand}.
+ *
+ * The index is rebuilt from two queries at startup, periodically, and shortly after a
+ * booking or cancellation invalidates the cached listings (several in a row share one
+ * rebuild). A rebuild also brings the demand counters back in line with show_timings, the
+ * movie search index in line with the movie table, and drops seat maps of shows that are
+ * gone; it swaps in a new snapshot, so readers never see a half-built one.
+ *
+ * Configuration: -Dcatalog.refreshMs (default 60000), -Dcatalog.refreshDelayMs delay of a
+ * rebuild after a change (default 1000), -Dcatalog.pageSize default page (default 20),
+ * -Dcatalog.maxPageSize (default 100).
+ */
+final class Catalog {
+    private static final Log LOG = Log.get(Catalog.class);
+    static final long REFRESH_INTERVAL_MILLIS = Long.getLong("catalog.refreshMs", 60_000L);
+    static final long REFRESH_DELAY_MILLIS = Math.max(0L, Long.getLong("catalog.refreshDelayMs", 1_000L));
+    static final int PAGE_SIZE = Math.max(1, Integer.getInteger("catalog.pageSize", 20));
+    static final int MAX_PAGE_SIZE = Math.max(PAGE_SIZE, Integer.getInteger("catalog.maxPageSize", 100));
+
+    private static final Comparator<ShowTiming> BY_START =
+        Comparator.comparing((ShowTiming show) -> show.showDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(show -> show.showTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingInt(show -> show.showId);
+
+    private static volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), Collections.emptyList());
+    private static ScheduledExecutorService refresher;
+    // Set while a rebuild asked for by refreshSoon() is waiting to run
+    private static final AtomicBoolean REFRESH_PENDING = new AtomicBoolean();
+
+    static final class Movie {
+        final int id;
+        final String title;
+        final String genre;
+        final int duration;
+        // ISO yyyy-MM-dd as stored, so it sorts as text
+        final String releaseDate;
+
+        Movie(int id, String title, String genre, int duration, String releaseDate) {
+            this.id = id;
+            this.title = title;
+            this.genre = genre;
+            this.duration = duration;
+            this.releaseDate = releaseDate;
+        }
+    }
+
+    static final class ShowTiming {
+        final int showId;
+        final int movieId;
+        final LocalDate showDate;
+        final LocalTime showTime;
+        final int screenNo;
+        // As of the last refresh; ShowDemand has the live count
+        final int availableSeats;
+
+        ShowTiming(int showId, int movieId, LocalDate showDate, LocalTime showTime, int screenNo, int availableSeats) {
+            this.showId = showId;
+            this.movieId = movieId;
+            this.showDate = showDate;
+            this.showTime = showTime;
+            this.screenNo = screenNo;
+            this.availableSeats = availableSeats;
+        }
+
+        int availableSeats() {
+            ShowDemand.Show demand = ShowDemand.get(showId);
+            return demand != null ? demand.availableSeats() : availableSeats;
+        }
+    }
+
+    enum MovieSort {
+        ID("id", Comparator.comparingInt(movie -> movie.id)),
+        TITLE("title", Comparator.comparing(movie -> movie.title, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))),
+        RELEASE_DATE("releaseDate", Comparator.comparing(movie -> movie.releaseDate, Comparator.nullsFirst(Comparator.naturalOrder()))),
+        DURATION("duration", Comparator.comparingInt(movie -> movie.duration));
+
+        final String param;
+        final Comparator<Movie> order;
+
+        MovieSort(String param, Comparator<Movie> order) {
+            this.param = param;
+            // The id breaks ties, so every movie has one place in the order
+            this.order = order.thenComparingInt(movie -> movie.id);
+        }
+
+        static MovieSort of(String param) {
+            for (MovieSort sort : values()) {
+                if (sort.param.equals(param)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("sort must be one of id, title, releaseDate or duration, optionally prefixed with -");
+        }
+    }
+
+    static final class Page<T> {
+        final List<T> items;
+        // Null on the last page
+        final String nextCursor;
+
+        Page(List<T> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /** GET /api/movies?genre=&sort=&limit=&cursor= */
+    static final class MovieQuery {
+        // The parameters that ask GET /api/movies for a page rather than the full list
+        static final Set<String> PARAMS = Set.of("genre", "sort", "limit", "cursor");
+
+        String genre;
+        MovieSort sort = MovieSort.ID;
+        boolean descending;
+        int limit = PAGE_SIZE;
+        String cursor;
+
+        static MovieQuery parse(Map<String, String> params) {
+            MovieQuery q = new MovieQuery();
+            q.genre = params.get("genre");
+            String sort = params.get("sort");
+            if (sort != null) {
+                q.descending = sort.startsWith("-");
+                q.sort = MovieSort.of(q.descending ? sort.substring(1) : sort);
+            }
+            q.limit = limit(params.get("limit"));
+            q.cursor = params.get("cursor");
+            return q;
+        }
+    }
+
+    /** GET /api/showtimings?movieId=&genre=&screen=&from=&to=&available=&sort=&limit=&cursor= */
+    static final class ShowQuery {
+        // The parameters that ask GET /api/showtimings for a page; movieId alone keeps the full list
+        static final Set<String> PARAMS = Set.of("genre", "screen", "from", "to", "available", "sort", "limit", "cursor");
+
+        Integer movieId;
+        String genre;
+        Integer screenNo;
+        // Defaults to today, so a listing does not start at the first show ever held
+        LocalDate from = LocalDate.now();
+        LocalDate to;
+        boolean availableOnly;
+        boolean descending;
+        int limit = PAGE_SIZE;
+        String cursor;
+
+        static ShowQuery parse(Map<String, String> params) {
+            ShowQuery q = new ShowQuery();
+            q.movieId = intParam(params, "movieId");
+            q.genre = params.get("genre");
+            q.screenNo = intParam(params, "screen");
+            if (params.containsKey("from")) {
+                q.from = dateParam(params, "from");
+            }
+            q.to = dateParam(params, "to");
+            q.availableOnly = Boolean.parseBoolean(params.get("available"));
+            String sort = params.get("sort");
+            if (sort != null) {
+                if (!sort.equals("start") && !sort.equals("-start")) {
+                    throw new IllegalArgumentException("sort must be start or -start");
+                }
+                q.descending = sort.startsWith("-");
+            }
+            q.limit = limit(params.get("limit"));
+            q.cursor = params.get("cursor");
+            return q;
+        }
+    }
+
+    private static final class Snapshot {
+        final Map<Integer, Movie> movies = new HashMap<>();
+        final Map<MovieSort, KeysetIndex<Movie>> moviesBy = new EnumMap<>(MovieSort.class);
+        // Genres are matched case-insensitively
+        final Map<String, Map<MovieSort, KeysetIndex<Movie>>> moviesByGenre = new HashMap<>();
+        final KeysetIndex<ShowTiming> shows;
+        final Map<Integer, KeysetIndex<ShowTiming>> showsByMovie = new HashMap<>();
+        final Map<String, KeysetIndex<ShowTiming>> showsByGenre = new HashMap<>();
+        final Map<Integer, KeysetIndex<ShowTiming>> showsByScreen = new HashMap<>();
+
+        Snapshot(List<Movie> movieList, List<ShowTiming> showList) {
+            Map<String, List<Movie>> genreMovies = new HashMap<>();
+            for (Movie movie : movieList) {
+                movies.put(movie.id, movie);
+                genreMovies.computeIfAbsent(genreKey(movie.genre), key -> new ArrayList<>()).add(movie);
+            }
+            for (MovieSort sort : MovieSort.values()) {
+                moviesBy.put(sort, new KeysetIndex<>(movieList, sort.order));
+                genreMovies.forEach((genre, list) -> moviesByGenre
+                    .computeIfAbsent(genre, key -> new EnumMap<>(MovieSort.class))
+                    .put(sort, new KeysetIndex<>(list, sort.order)));
+            }
+
+            shows = new KeysetIndex<>(showList, BY_START);
+            Map<Integer, List<ShowTiming>> byMovie = new HashMap<>();
+            Map<String, List<ShowTiming>> byGenre = new HashMap<>();
+            Map<Integer, List<ShowTiming>> byScreen = new HashMap<>();
+            for (ShowTiming show : showList) {
+                byMovie.computeIfAbsent(show.movieId, key -> new ArrayList<>()).add(show);
+                Movie movie = movies.get(show.movieId);
+                if (movie != null) {
+                    byGenre.computeIfAbsent(genreKey(movie.genre), key -> new ArrayList<>()).add(show);
+                }
+                byScreen.computeIfAbsent(show.screenNo, key -> new ArrayList<>()).add(show);
+            }
+            byMovie.forEach((id, list) -> showsByMovie.put(id, new KeysetIndex<>(list, BY_START)));
+            byGenre.forEach((genre, list) -> showsByGenre.put(genre, new KeysetIndex<>(list, BY_START)));
+            byScreen.forEach((screen, list) -> showsByScreen.put(screen, new KeysetIndex<>(list, BY_START)));
+        }
+    }
+
+    private Catalog() {
+    }
+
+    /** Rebuilds the index from the database; returns the number of show timings. */
+    static int load() throws SQLException {
+        List<Movie> movies = new ArrayList<>();
+        List<ShowTiming> shows = new ArrayList<>();
+        long listedAt = System.currentTimeMillis();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.MOVIES);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    movies.add(new Movie(rs.getInt("MovieID"), rs.getString("Title"), rs.getString("Genre"),
+                        rs.getInt("Duration"), rs.getString("ReleaseDate")));
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_SHOWS);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int showId = rs.getInt("ShowID");
+                    int screenNo = rs.getInt("ScreenNo");
+                    String showTime = rs.getString("ShowTime");
+                    int available = rs.getInt("AvailableSeats");
+                    Date showDate = rs.getDate("ShowDate");
+                    ShowDemand.observe(showId, screenNo, showTime, available);
+                    shows.add(new ShowTiming(showId, rs.getInt("MovieID"), showDate != null ? showDate.toLocalDate() : null,
+                        Pricing.showTime(showTime), screenNo, available));
+                }
+            }
+        }
+        snapshot = new Snapshot(movies, shows);
+        MovieSearch.sync(movies);
+        Set<Integer> showIds = new HashSet<>();
+        for (ShowTiming show : shows) {
+            showIds.add(show.showId);
+        }
+        SeatMap.retain(showIds, listedAt);
+        return shows.size();
+    }
+
+    static synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(Catalog::refresh, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rebuilds the index after the refresh delay, for writers that just invalidated the
+     * cached listings. Calls made before that rebuild starts share it.
+     */
+    static synchronized void refreshSoon() {
+        if (refresher != null && REFRESH_PENDING.compareAndSet(false, true)) {
+            refresher.schedule(() -> {
+                REFRESH_PENDING.set(false);
+                refresh();
+            }, REFRESH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void refresh() {
+        try {
+            load();
+        } catch (SQLException e) {
+            LOG.warn("Catalog refresh failed, keeping the previous index: {}", e.getMessage());
+        }
+    }
+
+    static Movie movie(int movieId) {
+        return snapshot.movies.get(movieId);
+    }
+
+    static int movieCount() {
+        return snapshot.movies.size();
+    }
+
+    static Page<Movie> movies(MovieQuery q) {
+        Snapshot current = snapshot;
+        KeysetIndex<Movie> index;
+        if (q.genre != null) {
+            Map<MovieSort, KeysetIndex<Movie>> genre = current.moviesByGenre.get(genreKey(q.genre));
+            if (genre == null) {
+                return new Page<>(Collections.emptyList(), null);
+            }
+            index = genre.get(q.sort);
+        } else {
+            index = current.moviesBy.get(q.sort);
+        }
+        Movie after = q.cursor != null ? movieCursor(q.cursor, q.sort, q.descending) : null;
+        List<Movie> items = index.page(after, q.descending, movie -> true, movie -> false, q.limit);
+        return page(items, q.limit, last -> encode("m", sortParam(q.sort.param, q.descending),
+            String.valueOf(last.id), String.valueOf(last.duration), orEmpty(last.releaseDate), orEmpty(last.title)));
+    }
+
+    static Page<ShowTiming> shows(ShowQuery q) {
+        Snapshot current = snapshot;
+        // The narrowest partition the query pins down; the other filters are applied while walking it
+        KeysetIndex<ShowTiming> index;
+        if (q.movieId != null) {
+            index = current.showsByMovie.get(q.movieId);
+        } else if (q.genre != null) {
+            index = current.showsByGenre.get(genreKey(q.genre));
+        } else if (q.screenNo != null) {
+            index = current.showsByScreen.get(q.screenNo);
+        } else {
+            index = current.shows;
+        }
+        if (index == null) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+
+        Predicate<ShowTiming> filter = show -> true;
+        if (q.genre != null) {
+            String genre = genreKey(q.genre);
+            filter = filter.and(show -> {
+                Movie movie = current.movies.get(show.movieId);
+                return movie != null && genreKey(movie.genre).equals(genre);
+            });
+        }
+        if (q.screenNo != null) {
+            int screenNo = q.screenNo;
+            filter = filter.and(show -> show.screenNo == screenNo);
+        }
+        if (q.availableOnly) {
+            filter = filter.and(show -> show.availableSeats() > 0);
+        }
+
+        // The date range is where the walk starts and ends, not a filter
+        ShowTiming after = q.cursor != null ? showCursor(q.cursor, q.descending) : null;
+        ShowTiming bound = q.descending
+            ? (q.to != null ? new ShowTiming(Integer.MAX_VALUE, 0, q.to, LocalTime.MAX, 0, 0) : null)
+            : (q.from != null ? new ShowTiming(Integer.MIN_VALUE, 0, q.from, null, 0, 0) : null);
+        if (bound != null && (after == null || (q.descending ? BY_START.compare(bound, after) < 0 : BY_START.compare(bound, after) > 0))) {
+            after = bound;
+        }
+        LocalDate from = q.from;
+        LocalDate to = q.to;
+        Predicate<ShowTiming> past = q.descending
+            ? show -> from != null && show.showDate != null && show.showDate.isBefore(from)
+            : show -> to != null && show.showDate != null && show.showDate.isAfter(to);
+
+        List<ShowTiming> items = index.page(after, q.descending, filter, past, q.limit);
+        return page(items, q.limit, last -> encode("s", q.descending ? "-start" : "start", String.valueOf(last.showId),
+            last.showDate != null ? last.showDate.toString() : "", last.showTime != null ? last.showTime.toString() : ""));
+    }
+
+    private static <T> Page<T> page(List<T> items, int limit, Function<T, String> cursor) {
+        if (items.size() <= limit) {
+            return new Page<>(items, null);
+        }
+        List<T> shown = items.subList(0, limit);
+        return new Page<>(shown, cursor.apply(shown.get(limit - 1)));
+    }
+
+    // Cursors carry the sort key of the last item, so the next page starts right after it
+    // even if that item has since gone
+    private static Movie movieCursor(String cursor, MovieSort sort, boolean descending) {
+        String[] parts = decode(cursor, "m", sortParam(sort.param, descending), 6);
+        try {
+            return new Movie(Integer.parseInt(parts[2]), parts[5], null, Integer.parseInt(parts[3]), orNull(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cursor is not valid");
+        }
+    }
+
+    private static ShowTiming showCursor(String cursor, boolean descending) {
+        String[] parts = decode(cursor, "s", descending ? "-start" : "start", 5);
+        try {
+            return new ShowTiming(Integer.parseInt(parts[2]), 0,
+                parts[3].isEmpty() ? null : LocalDate.parse(parts[3]),
+                parts[4].isEmpty() ? null : LocalTime.parse(parts[4]), 0, 0);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("cursor is not valid");
+        }
+    }
+
+    private static String encode(String... parts) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.join("\n", parts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decode(String cursor, String kind, String sort, int fields) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", fields);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("cursor is not valid");
+        }
+        if (parts.length != fields || !parts[0].equals(kind)) {
+            throw new IllegalArgumentException("cursor is not valid");
+        }
+        if (!parts[1].equals(sort)) {
+            throw new IllegalArgumentException("cursor belongs to sort " + parts[1]);
+        }
+        return parts;
+    }
+
+    private static int limit(String value) {
+        if (value == null) {
+            return PAGE_SIZE;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit >= 1 && limit <= MAX_PAGE_SIZE) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+
+    private static Integer intParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static LocalDate dateParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be a date like 2024-01-31");
+        }
+    }
+
+    private static String genreKey(String genre) {
+        return genre == null ? "" : genre.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String sortParam(String param, boolean descending) {
+        return descending ? "-" + param : param;
+    }
+
+    private static String orEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String orNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
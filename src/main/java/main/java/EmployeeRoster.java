@@ -0,0 +1,68 @@
+package main.java;
+
+import util.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Employees who serve snack orders, kept in memory and assigned round-robin so each order
+ * gets the next one in turn instead of a random pick from the database.
+ */
+final class EmployeeRoster {
+    static final long REFRESH_INTERVAL_MILLIS = Long.getLong("employees.refreshMs", 5 * 60 * 1000L);
+
+    static final class Employee {
+        final int id;
+        final String name;
+
+        Employee(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+    private static volatile List<Employee> employees = new ArrayList<>();
+    private static volatile long loadedAt;
+
+    private EmployeeRoster() {
+    }
+
+    /**
+     * Returns the next employee in turn, or null if there are none. The roster is loaded on
+     * first use and refreshed periodically, so only those requests borrow a connection.
+     */
+    static Employee next() throws SQLException {
+        List<Employee> current = employees;
+        if (current.isEmpty() || System.currentTimeMillis() - loadedAt >= REFRESH_INTERVAL_MILLIS) {
+            current = reload();
+        }
+        if (current.isEmpty()) {
+            return null;
+        }
+        return current.get(Math.floorMod(NEXT.getAndIncrement(), current.size()));
+    }
+
+    private static synchronized List<Employee> reload() throws SQLException {
+        // Another request may have refreshed it while this one waited
+        if (!employees.isEmpty() && System.currentTimeMillis() - loadedAt < REFRESH_INTERVAL_MILLIS) {
+            return employees;
+        }
+        List<Employee> loaded = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_EMPLOYEES);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                loaded.add(new Employee(rs.getInt("EmployeeID"), rs.getString("Name")));
+            }
+        }
+        employees = loaded;
+        loadedAt = System.currentTimeMillis();
+        return loaded;
+    }
+}
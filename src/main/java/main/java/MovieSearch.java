@@ -0,0 +1,299 @@
+package main.java;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over movie titles and genres, in memory. Words map to the movies that
+ * contain them (an inverted index), and a trie over those words finds every word that
+ * starts with what the user has typed so far, so the last word of a query matches as a
+ * prefix and autocomplete needs no database.
+ *
+ * Every query word must match. A title word counts more than a genre word and a whole
+ * word more than a prefix; ties go by title.
+ *
+ * The index follows the {@link Catalog}: each refresh hands it the current movies, and only
+ * movies that were added, removed or changed are re-indexed.
+ *
+ * Configuration: -Dsearch.maxResults (default 50).
+ */
+final class MovieSearch {
+    static final int MAX_RESULTS = Math.max(1, Integer.getInteger("search.maxResults", 50));
+    static final int MAX_QUERY_LENGTH = 100;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    // Field bits of a posting
+    private static final int TITLE = 1;
+    private static final int GENRE = 2;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final Map<Integer, Doc> INDEXED = new HashMap<>();
+    // Word to the movies containing it, with the fields it appears in
+    private static final Map<String, Map<Integer, Integer>> POSTINGS = new HashMap<>();
+    private static final Node TRIE = new Node();
+
+    private static final class Doc {
+        final Catalog.Movie movie;
+        // Folded title, so ranking compares plain strings
+        final String titleKey;
+
+        Doc(Catalog.Movie movie) {
+            this.movie = movie;
+            this.titleKey = String.join(" ", words(movie.title));
+        }
+    }
+
+    private static final class Hit {
+        final Doc doc;
+        final int score;
+
+        Hit(Doc doc, int score) {
+            this.doc = doc;
+            this.score = score;
+        }
+
+        // Higher score first, then by title
+        boolean beats(Hit other) {
+            if (score != other.score) {
+                return score > other.score;
+            }
+            int byTitle = doc.titleKey.compareTo(other.doc.titleKey);
+            return byTitle != 0 ? byTitle < 0 : doc.movie.id < other.doc.movie.id;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        // Every indexed word this node is a prefix of
+        final Set<String> words = new HashSet<>();
+    }
+
+    private MovieSearch() {
+    }
+
+    /** Brings the index in line with {@code movies}; returns how many movies were re-indexed. */
+    static int sync(Collection<Catalog.Movie> movies) {
+        Map<Integer, Catalog.Movie> current = new HashMap<>();
+        for (Catalog.Movie movie : movies) {
+            current.put(movie.id, movie);
+        }
+        LOCK.writeLock().lock();
+        try {
+            int changed = 0;
+            for (Doc doc : new ArrayList<>(INDEXED.values())) {
+                Catalog.Movie old = doc.movie;
+                Catalog.Movie now = current.get(old.id);
+                if (now == null || !sameText(old, now)) {
+                    remove(old);
+                    // A changed movie is counted when it is added back
+                    if (now == null) {
+                        changed++;
+                    }
+                }
+            }
+            for (Catalog.Movie movie : current.values()) {
+                if (!INDEXED.containsKey(movie.id)) {
+                    add(movie);
+                    changed++;
+                } else {
+                    // Same words; keep the newest copy for the other fields
+                    INDEXED.put(movie.id, new Doc(movie));
+                }
+            }
+            return changed;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** Best matches first, at most {@code limit}. */
+    static List<Catalog.Movie> search(String query, int limit) {
+        List<String> terms = words(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Still being typed unless it ends in a separator
+        boolean lastIsPrefix = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+
+        LOCK.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = null;
+            for (int i = 0; i < terms.size(); i++) {
+                Map<Integer, Integer> termScores = match(terms.get(i), lastIsPrefix && i == terms.size() - 1);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    // Every term has to match; keep the smaller map as the one walked
+                    Map<Integer, Integer> small = scores.size() <= termScores.size() ? scores : termScores;
+                    Map<Integer, Integer> large = small == scores ? termScores : scores;
+                    Map<Integer, Integer> both = new HashMap<>();
+                    for (Map.Entry<Integer, Integer> entry : small.entrySet()) {
+                        Integer other = large.get(entry.getKey());
+                        if (other != null) {
+                            both.put(entry.getKey(), entry.getValue() + other);
+                        }
+                    }
+                    scores = both;
+                }
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            return best(scores, limit);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // The top hits by keeping only the best {@code limit} in a heap, rather than sorting every match
+    private static List<Catalog.Movie> best(Map<Integer, Integer> scores, int limit) {
+        PriorityQueue<Hit> worstFirst = new PriorityQueue<>(limit + 1, (a, b) -> a.beats(b) ? 1 : b.beats(a) ? -1 : 0);
+        for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+            Hit worst = worstFirst.size() < limit ? null : worstFirst.peek();
+            int score = entry.getValue();
+            if (worst != null && score < worst.score) {
+                continue;
+            }
+            Hit hit = new Hit(INDEXED.get(entry.getKey()), score);
+            if (worst == null) {
+                worstFirst.add(hit);
+            } else if (hit.beats(worst)) {
+                worstFirst.poll();
+                worstFirst.add(hit);
+            }
+        }
+        Catalog.Movie[] ranked = new Catalog.Movie[worstFirst.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = worstFirst.poll().doc.movie;
+        }
+        return Arrays.asList(ranked);
+    }
+
+    // Movie ID to score for one query term: title word 4, title prefix 3, genre word 2, genre prefix 1
+    private static Map<Integer, Integer> match(String term, boolean prefix) {
+        Map<Integer, Integer> exact = POSTINGS.get(term);
+        Node node = prefix ? TRIE : null;
+        for (int i = 0; node != null && i < term.length(); i++) {
+            node = node.children.get(term.charAt(i));
+        }
+        Set<String> prefixed = node != null ? node.words : Collections.emptySet();
+
+        // Short prefixes match many words; size the map once instead of growing it step by step
+        int postings = exact != null ? exact.size() : 0;
+        for (String word : prefixed) {
+            postings += POSTINGS.get(word).size();
+        }
+        Map<Integer, Integer> scores = new HashMap<>(postings * 4 / 3 + 1);
+        if (exact != null) {
+            exact.forEach((movieId, fields) -> scores.put(movieId, score(fields, true)));
+        }
+        for (String word : prefixed) {
+            if (!word.equals(term)) {
+                POSTINGS.get(word).forEach((movieId, fields) -> scores.merge(movieId, score(fields, false), Math::max));
+            }
+        }
+        return scores;
+    }
+
+    private static int score(int fields, boolean whole) {
+        if ((fields & TITLE) != 0) {
+            return whole ? 4 : 3;
+        }
+        return whole ? 2 : 1;
+    }
+
+    private static void add(Catalog.Movie movie) {
+        INDEXED.put(movie.id, new Doc(movie));
+        fields(movie).forEach((word, fields) -> {
+            Map<Integer, Integer> postings = POSTINGS.computeIfAbsent(word, key -> new HashMap<>());
+            if (postings.isEmpty()) {
+                Node node = TRIE;
+                for (int i = 0; i < word.length(); i++) {
+                    node = node.children.computeIfAbsent(word.charAt(i), key -> new Node());
+                    node.words.add(word);
+                }
+            }
+            postings.put(movie.id, fields);
+        });
+    }
+
+    private static void remove(Catalog.Movie movie) {
+        INDEXED.remove(movie.id);
+        for (String word : fields(movie).keySet()) {
+            Map<Integer, Integer> postings = POSTINGS.get(word);
+            if (postings == null) {
+                continue;
+            }
+            postings.remove(movie.id);
+            if (postings.isEmpty()) {
+                POSTINGS.remove(word);
+                unlink(TRIE, word, 0);
+            }
+        }
+    }
+
+    // Drops a word that no movie has any more, and the nodes only it was using
+    private static void unlink(Node node, String word, int depth) {
+        if (depth == word.length()) {
+            return;
+        }
+        Node child = node.children.get(word.charAt(depth));
+        if (child == null) {
+            return;
+        }
+        child.words.remove(word);
+        unlink(child, word, depth + 1);
+        if (child.words.isEmpty()) {
+            node.children.remove(word.charAt(depth));
+        }
+    }
+
+    // Each word of the movie with the fields it appears in
+    private static Map<String, Integer> fields(Catalog.Movie movie) {
+        Map<String, Integer> fields = new HashMap<>();
+        for (String word : words(movie.title)) {
+            fields.merge(word, TITLE, (a, b) -> a | b);
+        }
+        for (String word : words(movie.genre)) {
+            fields.merge(word, GENRE, (a, b) -> a | b);
+        }
+        return fields;
+    }
+
+    // Lower case, accents dropped, split on anything that is not a letter or digit
+    static List<String> words(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+            .toLowerCase(Locale.ROOT);
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : NON_WORD.split(folded)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    private static boolean sameText(Catalog.Movie a, Catalog.Movie b) {
+        return Objects.equals(a.title, b.title) && Objects.equals(a.genre, b.genre);
+    }
+}
@@ -0,0 +1,138 @@
+package main.java;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Short-lived signed price quotes. The seat map hands out a quote with the prices it shows,
+ * and a booking that brings it back pays the quoted multiplier even if demand has moved
+ * since, as long as the quote has not expired and the price rules have not changed. Quotes
+ * are signed with HMAC-SHA256, so a client cannot make up a cheaper one, and checking one
+ * needs no database.
+ *
+ * Quotes are issued per slot of half the TTL and expire a full TTL after their slot starts,
+ * so one quote can be served from a cached seat map for a whole slot and still has at least
+ * half its TTL left when the client gets it.
+ *
+ * Configuration: -Dpricing.quoteTtlMs (default 120000), -Dpricing.quoteSecret (default a
+ * random key per run, which voids outstanding quotes on restart; set the same secret on
+ * every server behind one load balancer).
+ */
+final class PriceQuotes {
+    static final long TTL_MILLIS = Math.max(2L, Long.getLong("pricing.quoteTtlMs", 120_000L));
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecretKeySpec KEY = new SecretKeySpec(secret(), ALGORITHM);
+    // Mac instances are not thread-safe
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(PriceQuotes::newMac);
+
+    static final class Quote {
+        final int showId;
+        // In basis points, so the signed text and the comparison are exact
+        final long multiplierBasisPoints;
+        final int rulesGeneration;
+        final long expiresAt;
+
+        Quote(int showId, long multiplierBasisPoints, int rulesGeneration, long expiresAt) {
+            this.showId = showId;
+            this.multiplierBasisPoints = multiplierBasisPoints;
+            this.rulesGeneration = rulesGeneration;
+            this.expiresAt = expiresAt;
+        }
+
+        double multiplier() {
+            return multiplierBasisPoints / 10_000.0;
+        }
+
+        // What the signature covers
+        String terms() {
+            return showId + "." + multiplierBasisPoints + "." + rulesGeneration + "." + expiresAt;
+        }
+
+        boolean sameTerms(Quote other) {
+            return other != null && showId == other.showId && multiplierBasisPoints == other.multiplierBasisPoints
+                && rulesGeneration == other.rulesGeneration && expiresAt == other.expiresAt;
+        }
+    }
+
+    private PriceQuotes() {
+    }
+
+    /** The terms a quote for this show would be issued on now; cheap, nothing is signed. */
+    static Quote current(int showId, double multiplier) {
+        long slot = TTL_MILLIS / 2;
+        long expiresAt = System.currentTimeMillis() / slot * slot + TTL_MILLIS;
+        return new Quote(showId, Math.round(multiplier * 10_000), Pricing.generation(), expiresAt);
+    }
+
+    static String sign(Quote quote) {
+        String terms = quote.terms();
+        return terms + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(terms));
+    }
+
+    /**
+     * The quote behind {@code token} if it was issued here for {@code showId}, has not
+     * expired and was made under the current price rules; null otherwise.
+     */
+    static Quote verify(String token, int showId) {
+        int dot = token.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String terms = token.substring(0, dot);
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signature, mac(terms))) {
+            return null;
+        }
+        String[] parts = terms.split("\\.");
+        if (parts.length != 4) {
+            return null;
+        }
+        Quote quote;
+        try {
+            quote = new Quote(Integer.parseInt(parts[0]), Long.parseLong(parts[1]),
+                Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (quote.showId != showId || quote.rulesGeneration != Pricing.generation()
+                || quote.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return quote;
+    }
+
+    private static byte[] mac(String terms) {
+        return MACS.get().doFinal(terms.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static byte[] secret() {
+        String configured = System.getProperty("pricing.quoteSecret");
+        if (configured != null && !configured.isEmpty()) {
+            return configured.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return random;
+    }
+}
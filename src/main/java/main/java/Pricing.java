@@ -0,0 +1,201 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ticket prices, computed in memory from the price_rules table. A rule can narrow the
+ * screen, a show time window and a range of seat rows; whatever it leaves out matches
+ * everything. The most specific matching rule wins, and between equally specific ones
+ * the newest. With no matching rule a seat costs the default price.
+ *
+ * Rules are loaded at startup and reloaded after every change made through the admin
+ * endpoint, so a booking never has to ask the database what its tickets cost.
+ *
+ * Configuration: -Dpricing.defaultPrice (default 200.00).
+ */
+final class Pricing {
+    private static final Log LOG = Log.get(Pricing.class);
+    static final double DEFAULT_PRICE = Double.parseDouble(System.getProperty("pricing.defaultPrice", "200.00"));
+
+    // Most specific first, newest first within the same specificity
+    private static final Comparator<Rule> PRECEDENCE =
+        Comparator.comparingInt(Rule::specificity).thenComparingInt(rule -> rule.id).reversed();
+
+    private static volatile List<Rule> rules = Collections.emptyList();
+    // Bumped on every reload, so a price quoted under older rules can be told apart
+    private static volatile int generation;
+
+    static final class Rule {
+        final int id;
+        // Null bounds match everything
+        final Integer screenNo;
+        final LocalTime fromTime;
+        final LocalTime toTime;
+        final Integer fromRow;
+        final Integer toRow;
+        final double price;
+
+        Rule(int id, Integer screenNo, LocalTime fromTime, LocalTime toTime, Integer fromRow, Integer toRow, double price) {
+            this.id = id;
+            this.screenNo = screenNo;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.price = price;
+        }
+
+        int specificity() {
+            return (screenNo != null ? 1 : 0)
+                + (fromTime != null || toTime != null ? 1 : 0)
+                + (fromRow != null || toRow != null ? 1 : 0);
+        }
+
+        boolean matches(int screen, LocalTime showTime, int row) {
+            if (screenNo != null && screenNo != screen) {
+                return false;
+            }
+            if (fromRow != null && row < fromRow || toRow != null && row > toRow) {
+                return false;
+            }
+            if (fromTime == null && toTime == null) {
+                return true;
+            }
+            if (showTime == null) {
+                return false;
+            }
+            if (fromTime != null && toTime != null && fromTime.isAfter(toTime)) {
+                // Window runs past midnight, e.g. 22:00 to 02:00
+                return !showTime.isBefore(fromTime) || showTime.isBefore(toTime);
+            }
+            return (fromTime == null || !showTime.isBefore(fromTime))
+                && (toTime == null || showTime.isBefore(toTime));
+        }
+    }
+
+    private Pricing() {
+    }
+
+    /** Replaces the rules with what is in the database; returns how many there are. */
+    static synchronized int load() throws SQLException {
+        List<Rule> loaded = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_PRICE_RULES);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                loaded.add(new Rule(rs.getInt("RuleID"),
+                    rs.getObject("ScreenNo", Integer.class),
+                    localTime(rs.getTime("FromTime")), localTime(rs.getTime("ToTime")),
+                    rs.getObject("FromRow", Integer.class), rs.getObject("ToRow", Integer.class),
+                    rs.getDouble("Price")));
+            }
+        }
+        loaded.sort(PRECEDENCE);
+        rules = Collections.unmodifiableList(loaded);
+        generation++;
+        return loaded.size();
+    }
+
+    /** Price of a seat in {@code row} for a show on {@code screenNo} at {@code showTime}. */
+    static double price(int screenNo, LocalTime showTime, int row) {
+        for (Rule rule : rules) {
+            if (rule.matches(screenNo, showTime, row)) {
+                return rule.price;
+            }
+        }
+        return DEFAULT_PRICE;
+    }
+
+    /** The rule price scaled by a demand multiplier, to the cent. */
+    static double price(int screenNo, LocalTime showTime, int row, double multiplier) {
+        return Math.round(price(screenNo, showTime, row) * multiplier * 100) / 100.0;
+    }
+
+    /** Parses a show_timings.ShowTime value; null if it is not a time, so only time-free rules match. */
+    static LocalTime showTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalTime.parse(value);
+        } catch (DateTimeParseException e) {
+            LOG.warn("Unparseable show time '{}', pricing it without time rules", value);
+            return null;
+        }
+    }
+
+    static int generation() {
+        return generation;
+    }
+
+    static List<Rule> rules() {
+        return rules;
+    }
+
+    static int add(Rule rule) throws SQLException {
+        int id = -1;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.INSERT_PRICE_RULE, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            bind(stmt, rule);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    id = rs.getInt(1);
+                }
+            }
+        }
+        load();
+        return id;
+    }
+
+    /** Returns false if there is no rule with that ID. */
+    static boolean update(Rule rule) throws SQLException {
+        int updated;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.UPDATE_PRICE_RULE)) {
+            bind(stmt, rule);
+            stmt.setInt(7, rule.id);
+            updated = stmt.executeUpdate();
+        }
+        load();
+        return updated > 0;
+    }
+
+    /** Returns false if there is no rule with that ID. */
+    static boolean delete(int id) throws SQLException {
+        int deleted;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.DELETE_PRICE_RULE)) {
+            stmt.setInt(1, id);
+            deleted = stmt.executeUpdate();
+        }
+        load();
+        return deleted > 0;
+    }
+
+    private static void bind(PreparedStatement stmt, Rule rule) throws SQLException {
+        stmt.setObject(1, rule.screenNo, Types.INTEGER);
+        stmt.setObject(2, rule.fromTime != null ? Time.valueOf(rule.fromTime) : null, Types.TIME);
+        stmt.setObject(3, rule.toTime != null ? Time.valueOf(rule.toTime) : null, Types.TIME);
+        stmt.setObject(4, rule.fromRow, Types.INTEGER);
+        stmt.setObject(5, rule.toRow, Types.INTEGER);
+        stmt.setDouble(6, rule.price);
+    }
+
+    private static LocalTime localTime(Time time) {
+        return time != null ? time.toLocalTime() : null;
+    }
+}
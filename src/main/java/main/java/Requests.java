@@ -0,0 +1,355 @@
+package main.java;
+
+import com.sun.net.httpserver.HttpExchange;
+import util.JsonReader;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed request bodies. Each one is bound from the body in a single pass by
+ * {@link JsonReader}; unknown fields are ignored and required ones checked afterwards.
+ */
+final class Requests {
+    // Marks an int field that was not present in the body
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    private Requests() {
+    }
+
+    /** POST /api/book */
+    static final class Booking {
+        // Most seats one booking can take: the whole show, or one row when the seats must be adjacent
+        static final int MAX_SEATS = SeatAllocator.ROWS * SeatAllocator.SEATS_PER_ROW;
+        static final int MAX_ADJACENT_SEATS = SeatAllocator.SEATS_PER_ROW;
+
+        String name;
+        int age = MISSING;
+        String gender;
+        int movieId = MISSING;
+        int showId = MISSING;
+        int seats = MISSING;
+        boolean adjacent;
+        String holdId;
+        // Signed quote from GET /api/seats; optional, without it the seats cost the current price
+        String quote;
+
+        static Booking read(HttpExchange exchange) throws IOException {
+            Booking r = new Booking();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "name": r.name = in.nextString(); return true;
+                    case "age": r.age = in.nextInt(); return true;
+                    case "gender": r.gender = in.nextString(); return true;
+                    case "movieId": r.movieId = in.nextInt(); return true;
+                    case "showId": r.showId = in.nextInt(); return true;
+                    case "seats": r.seats = in.nextInt(); return true;
+                    case "adjacent": r.adjacent = in.nextBoolean(); return true;
+                    case "holdId": r.holdId = in.nextString(); return true;
+                    case "quote": r.quote = in.nextString(); return true;
+                    default: return false;
+                }
+            });
+            require(r.name, "name");
+            require(r.age, "age");
+            require(r.gender, "gender");
+            require(r.movieId, "movieId");
+            require(r.showId, "showId");
+            // A booking from a hold takes its seat count from the hold
+            if (r.holdId == null) {
+                require(r.seats, "seats");
+                int max = r.adjacent ? MAX_ADJACENT_SEATS : MAX_SEATS;
+                if (r.seats < 1 || r.seats > max) {
+                    throw new JsonReader.JsonException("seats must be between 1 and " + max
+                        + (r.adjacent ? " for adjacent seats" : ""));
+                }
+            }
+            return r;
+        }
+    }
+
+    /** POST /api/book/hold */
+    static final class Hold {
+        int showId = MISSING;
+        int seats = MISSING;
+        boolean adjacent;
+
+        static Hold read(HttpExchange exchange) throws IOException {
+            Hold r = new Hold();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "showId": r.showId = in.nextInt(); return true;
+                    case "seats": r.seats = in.nextInt(); return true;
+                    case "adjacent": r.adjacent = in.nextBoolean(); return true;
+                    default: return false;
+                }
+            });
+            require(r.showId, "showId");
+            require(r.seats, "seats");
+            return r;
+        }
+    }
+
+    /** POST /api/booking/confirm and /api/booking/cancel */
+    static final class Reservation {
+        int reservationId = MISSING;
+
+        static Reservation read(HttpExchange exchange) throws IOException {
+            Reservation r = new Reservation();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                if (name.equals("reservationId")) {
+                    r.reservationId = in.nextInt();
+                    return true;
+                }
+                return false;
+            });
+            require(r.reservationId, "reservationId");
+            return r;
+        }
+    }
+
+    /** POST /api/booking/cancel/bulk; either reservationIds or showId */
+    static final class BulkCancel {
+        final List<Integer> reservationIds = new ArrayList<>();
+        int showId = MISSING;
+
+        static BulkCancel read(HttpExchange exchange) throws IOException {
+            BulkCancel r = new BulkCancel();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "reservationIds":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            r.reservationIds.add(in.nextInt());
+                        }
+                        in.endArray();
+                        return true;
+                    case "showId":
+                        r.showId = in.nextInt();
+                        return true;
+                    default:
+                        return false;
+                }
+            });
+            if (r.showId == MISSING && r.reservationIds.isEmpty()) {
+                throw new JsonReader.JsonException("Missing field: reservationIds or showId");
+            }
+            if (r.showId != MISSING && !r.reservationIds.isEmpty()) {
+                throw new JsonReader.JsonException("Give either reservationIds or showId, not both");
+            }
+            if (r.showId == MISSING) {
+                r.showId = 0;
+            } else if (r.showId <= 0) {
+                throw new JsonReader.JsonException("Invalid showId");
+            }
+            return r;
+        }
+    }
+
+    /** POST /api/snacks/order */
+    static final class SnackOrder {
+        int reservationId = MISSING;
+        final List<SnackOrderLine> orders = new ArrayList<>();
+
+        static SnackOrder read(HttpExchange exchange) throws IOException {
+            SnackOrder r = new SnackOrder();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "reservationId":
+                        r.reservationId = in.nextInt();
+                        return true;
+                    case "orders":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            r.orders.add(SnackOrderLine.read(in));
+                        }
+                        in.endArray();
+                        return true;
+                    default:
+                        return false;
+                }
+            });
+            require(r.reservationId, "reservationId");
+            if (r.orders.isEmpty()) {
+                throw new JsonReader.JsonException("No snacks in order");
+            }
+            return r;
+        }
+    }
+
+    static final class SnackOrderLine {
+        int snackId = MISSING;
+        int quantity = MISSING;
+
+        static SnackOrderLine read(JsonReader reader) throws IOException {
+            SnackOrderLine line = new SnackOrderLine();
+            reader.readObject((name, in) -> {
+                switch (name) {
+                    case "snackId": line.snackId = in.nextInt(); return true;
+                    case "quantity": line.quantity = in.nextInt(); return true;
+                    default: return false;
+                }
+            });
+            require(line.snackId, "snackId");
+            require(line.quantity, "quantity");
+            if (line.quantity <= 0) {
+                throw new JsonReader.JsonException("Invalid quantity for snack ID: " + line.snackId);
+            }
+            return line;
+        }
+    }
+
+    /** POST /api/login */
+    static final class Login {
+        String email;
+        String password;
+
+        static Login read(HttpExchange exchange) throws IOException {
+            Login r = new Login();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "email": r.email = in.nextString(); return true;
+                    case "password": r.password = in.nextString(); return true;
+                    default: return false;
+                }
+            });
+            require(r.email, "email");
+            require(r.password, "password");
+            return r;
+        }
+    }
+
+    /** POST /api/signup */
+    static final class Signup {
+        String name;
+        String email;
+        String password;
+        int age = MISSING;
+        String gender;
+
+        static Signup read(HttpExchange exchange) throws IOException {
+            Signup r = new Signup();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "name": r.name = in.nextString(); return true;
+                    case "email": r.email = in.nextString(); return true;
+                    case "password": r.password = in.nextString(); return true;
+                    case "age": r.age = in.nextInt(); return true;
+                    case "gender": r.gender = in.nextString(); return true;
+                    default: return false;
+                }
+            });
+            require(r.name, "name");
+            require(r.email, "email");
+            require(r.password, "password");
+            require(r.age, "age");
+            require(r.gender, "gender");
+            return r;
+        }
+    }
+
+    /** POST and PUT /api/admin/pricing; the id is only needed for updates, omitted bounds match everything */
+    static final class PriceRule {
+        int id = MISSING;
+        int screenNo = MISSING;
+        String fromTime;
+        String toTime;
+        int fromRow = MISSING;
+        int toRow = MISSING;
+        double price = Double.NaN;
+
+        static Pricing.Rule read(HttpExchange exchange, boolean update) throws IOException {
+            PriceRule r = new PriceRule();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "id": r.id = in.nextInt(); return true;
+                    case "screenNo": r.screenNo = in.nextInt(); return true;
+                    case "fromTime": r.fromTime = in.nextString(); return true;
+                    case "toTime": r.toTime = in.nextString(); return true;
+                    case "fromRow": r.fromRow = in.nextInt(); return true;
+                    case "toRow": r.toRow = in.nextInt(); return true;
+                    case "price": r.price = in.nextDouble(); return true;
+                    default: return false;
+                }
+            });
+            if (update) {
+                require(r.id, "id");
+            }
+            if (Double.isNaN(r.price)) {
+                throw missing("price");
+            }
+            if (r.price < 0) {
+                throw new JsonReader.JsonException("price must not be negative");
+            }
+            return new Pricing.Rule(r.id, optional(r.screenNo), time(r.fromTime, "fromTime"), time(r.toTime, "toTime"),
+                optional(r.fromRow), optional(r.toRow), r.price);
+        }
+
+        private static Integer optional(int value) {
+            return value == MISSING ? null : value;
+        }
+
+        private static LocalTime time(String value, String field) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return LocalTime.parse(value);
+            } catch (DateTimeParseException e) {
+                throw new JsonReader.JsonException(field + " must be a time like 18:00");
+            }
+        }
+    }
+
+    /** POST and PUT /api/admin/snacks; the id is only needed for updates */
+    static final class Snack {
+        int id = MISSING;
+        String itemName;
+        double price = Double.NaN;
+        int quantity = MISSING;
+
+        static Snack read(HttpExchange exchange, boolean update) throws IOException {
+            Snack r = new Snack();
+            JsonReader.forRequest(exchange).readDocument((name, in) -> {
+                switch (name) {
+                    case "id": r.id = in.nextInt(); return true;
+                    case "itemName": r.itemName = in.nextString(); return true;
+                    case "price": r.price = in.nextDouble(); return true;
+                    case "quantity": r.quantity = in.nextInt(); return true;
+                    default: return false;
+                }
+            });
+            if (update) {
+                require(r.id, "id");
+            }
+            require(r.itemName, "itemName");
+            if (Double.isNaN(r.price)) {
+                throw missing("price");
+            }
+            require(r.quantity, "quantity");
+            // Stock never goes negative, and the admin sets it to an absolute value
+            if (r.quantity < 0) {
+                throw new JsonReader.JsonException("Invalid quantity for snack: " + r.quantity);
+            }
+            return r;
+        }
+    }
+
+    private static void require(String value, String field) {
+        if (value == null) {
+            throw missing(field);
+        }
+    }
+
+    private static void require(int value, String field) {
+        if (value == MISSING) {
+            throw missing(field);
+        }
+    }
+
+    private static JsonReader.JsonException missing(String field) {
+        return new JsonReader.JsonException("Missing field: " + field);
+    }
+}
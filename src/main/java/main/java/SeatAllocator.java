@@ -0,0 +1,109 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks free seats for a show in memory from one bitmask per row, so choosing N seats
+ * costs no database round trips.
+ */
+final class SeatAllocator {
+    static final int ROWS = 5;
+    static final int SEATS_PER_ROW = 20;
+
+    private static final long ROW_MASK = (1L << SEATS_PER_ROW) - 1;
+
+    // Bit (seat - 1) of occupied[row - 1] is set when that seat is taken
+    private final long[] occupied = new long[ROWS];
+
+    static final class Seat {
+        final int row;
+        final int seat;
+
+        Seat(int row, int seat) {
+            this.row = row;
+            this.seat = seat;
+        }
+    }
+
+    SeatAllocator() {
+    }
+
+    // Starts from a snapshot of SeatMap rows; rows beyond the bookable area are ignored
+    SeatAllocator(long[] rowBits) {
+        for (int r = 0; r < ROWS && r < rowBits.length; r++) {
+            occupied[r] = rowBits[r] & ROW_MASK;
+        }
+    }
+
+    void markOccupied(int row, int seat) {
+        if (row >= 1 && row <= ROWS && seat >= 1 && seat <= SEATS_PER_ROW) {
+            occupied[row - 1] |= 1L << (seat - 1);
+        }
+    }
+
+    boolean isOccupied(int row, int seat) {
+        return (occupied[row - 1] & (1L << (seat - 1))) != 0;
+    }
+
+    int freeCount() {
+        int free = 0;
+        for (long bits : occupied) {
+            free += SEATS_PER_ROW - Long.bitCount(bits);
+        }
+        return free;
+    }
+
+    /**
+     * Allocates {@code count} seats and marks them occupied. With {@code adjacent} set the seats
+     * are a contiguous block in one row; otherwise the lowest free seats are taken row by row.
+     * Returns null when the request cannot be satisfied, leaving the map untouched.
+     */
+    List<Seat> allocate(int count, boolean adjacent) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        return adjacent ? allocateAdjacent(count) : allocateFirstFree(count);
+    }
+
+    private List<Seat> allocateFirstFree(int count) {
+        if (freeCount() < count) {
+            return null;
+        }
+        List<Seat> seats = new ArrayList<>(count);
+        for (int r = 0; r < ROWS && seats.size() < count; r++) {
+            long free = ~occupied[r] & ROW_MASK;
+            while (free != 0 && seats.size() < count) {
+                int bit = Long.numberOfTrailingZeros(free);
+                free &= free - 1;
+                occupied[r] |= 1L << bit;
+                seats.add(new Seat(r + 1, bit + 1));
+            }
+        }
+        return seats;
+    }
+
+    private List<Seat> allocateAdjacent(int count) {
+        if (count > SEATS_PER_ROW) {
+            return null;
+        }
+        for (int r = 0; r < ROWS; r++) {
+            long free = ~occupied[r] & ROW_MASK;
+            // A bit survives only if it starts a run of `count` free seats
+            long runs = free;
+            for (int i = 1; i < count && runs != 0; i++) {
+                runs &= free >>> i;
+            }
+            if (runs != 0) {
+                int start = Long.numberOfTrailingZeros(runs);
+                List<Seat> seats = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    occupied[r] |= 1L << (start + i);
+                    seats.add(new Seat(r + 1, start + i + 1));
+                }
+                return seats;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+package main.java;
+
+import util.TimingWheel;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Time-limited seat holds. A hold claims seats in the in-memory SeatMap only; nothing is
+ * written to MySQL until the hold is turned into a booking. Holds that are not claimed
+ * before their TTL runs out are released by the timing wheel without touching the database.
+ */
+final class SeatHolds {
+    static final long DEFAULT_TTL_MILLIS = Long.getLong("booking.holdTtlMs", 10 * 60 * 1000L);
+
+    private static final ConcurrentMap<String, Hold> HOLDS = new ConcurrentHashMap<>();
+    // 100ms ticks, 64 slots per level: level 0 spans 6.4s, level 1 ~7min, level 2 ~7.5h
+    private static final TimingWheel EXPIRY = new TimingWheel(100, 64, "seat-hold-expiry");
+
+    static final class Hold {
+        final String id;
+        final int showId;
+        final List<SeatAllocator.Seat> seats;
+        final long expiresAt;
+        private final SeatMap.ShowSeats showSeats;
+        private volatile TimingWheel.Timeout timeout;
+
+        private Hold(String id, int showId, List<SeatAllocator.Seat> seats, long expiresAt, SeatMap.ShowSeats showSeats) {
+            this.id = id;
+            this.showId = showId;
+            this.seats = seats;
+            this.expiresAt = expiresAt;
+            this.showSeats = showSeats;
+        }
+    }
+
+    private SeatHolds() {
+    }
+
+    /** Returns null when the show does not exist or has no room for the requested seats. */
+    static Hold create(int showId, int count, boolean adjacent, long ttlMillis) throws SQLException {
+        SeatMap.ShowSeats showSeats = SeatMap.forShow(showId);
+        if (showSeats == null) {
+            return null;
+        }
+        List<SeatAllocator.Seat> seats = showSeats.reserve(count, adjacent);
+        if (seats == null) {
+            return null;
+        }
+        Hold hold = new Hold(UUID.randomUUID().toString(), showId, seats,
+                System.currentTimeMillis() + ttlMillis, showSeats);
+        HOLDS.put(hold.id, hold);
+        hold.timeout = EXPIRY.schedule(() -> expire(hold), ttlMillis);
+        return hold;
+    }
+
+    /**
+     * Takes ownership of a live hold for the given show. The caller must either persist the
+     * seats or release them with {@link #releaseSeats(Hold)}. Returns null if the hold is
+     * unknown, expired or belongs to a different show.
+     */
+    static Hold claim(String holdId, int showId) {
+        Hold hold = HOLDS.get(holdId);
+        if (hold == null || hold.showId != showId || !HOLDS.remove(holdId, hold)) {
+            return null;
+        }
+        cancelTimeout(hold);
+        return hold;
+    }
+
+    /** Gives up a hold early. Returns false if it had already expired or been claimed. */
+    static boolean release(String holdId) {
+        Hold hold = HOLDS.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        cancelTimeout(hold);
+        releaseSeats(hold);
+        return true;
+    }
+
+    static void releaseSeats(Hold hold) {
+        hold.showSeats.releaseAll(hold.seats);
+    }
+
+    static int activeCount() {
+        return HOLDS.size();
+    }
+
+    // The timeout is attached after the hold is published, so a very fast claim may not see it yet
+    private static void cancelTimeout(Hold hold) {
+        TimingWheel.Timeout timeout = hold.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private static void expire(Hold hold) {
+        // Whoever removes the hold from the map owns it, so a racing claim cannot lose its seats
+        if (HOLDS.remove(hold.id, hold)) {
+            releaseSeats(hold);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import util.SingleFlight;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory seat state for every show, keyed by ShowID. Each row is one word of an
+ * AtomicLongArray, so reserving a seat is a single compare-and-set and concurrent bookings
+ * for the same show never take a lock. MySQL stays the system of record: the map is warmed
+ * from the tickets and reservations tables at startup and every change is written through
+ * by the booking and cancellation handlers. A show that is not loaded yet is read once no
+ * matter how many requests ask for it at the same time. Only shows with a show_timings row
+ * get an entry, and each catalog refresh drops the shows that no longer have one.
+ *
+ * Two layouts are kept apart. Tickets use the bookable {@link SeatAllocator} grid
+ * (tickets.RowNo/SeatNo), which is what bookings, holds and cancellations change. The old
+ * seat picker numbered seats 1..120 across 8 rows of 15 (reservations.SeatNumber); those
+ * are only read, and have their own bits so they never stand in for a ticket seat.
+ */
+final class SeatMap {
+    private static final Log LOG = Log.get(SeatMap.class);
+
+    // Layout of reservations.SeatNumber
+    static final int PICKER_ROWS = 8;
+    static final int PICKER_SEATS_PER_ROW = 15;
+    static final int PICKER_SEATS = PICKER_ROWS * PICKER_SEATS_PER_ROW;
+
+    private static final ConcurrentMap<Integer, ShowSeats> SHOWS = new ConcurrentHashMap<>();
+    private static final SingleFlight<Integer, ShowSeats> LOADS = new SingleFlight<>();
+
+    private SeatMap() {
+    }
+
+    /**
+     * Loads the seat state of every show that already has bookings. Shows without any
+     * bookings yet are loaded on first use.
+     */
+    static int warm() throws SQLException {
+        ConcurrentMap<Integer, ShowSeats> loaded = new ConcurrentHashMap<>();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_TICKETS);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loaded.computeIfAbsent(rs.getInt("ShowID"), id -> new ShowSeats())
+                          .mark(rs.getInt("RowNo"), rs.getInt("SeatNo"));
+                }
+            }
+            loadReservedSeats(conn, loaded);
+        }
+        loaded.forEach(SHOWS::putIfAbsent);
+        return loaded.size();
+    }
+
+    /** The show's seats, loaded once if they are not in memory yet; null if there is no such show. */
+    static ShowSeats forShow(int showId) throws SQLException {
+        ShowSeats seats = SHOWS.get(showId);
+        if (seats != null) {
+            return seats;
+        }
+        return LOADS.run(showId, () -> load(showId));
+    }
+
+    static boolean isLoaded(int showId) {
+        return SHOWS.containsKey(showId);
+    }
+
+    static int size() {
+        return SHOWS.size();
+    }
+
+    /**
+     * Forgets the shows missing from {@code showIds}, the shows the database has now. Only
+     * shows loaded before {@code listedAt} go, so one loaded after the list was read stays.
+     */
+    static void retain(Set<Integer> showIds, long listedAt) {
+        SHOWS.entrySet().removeIf(entry -> !showIds.contains(entry.getKey()) && entry.getValue().loadedAt < listedAt);
+    }
+
+    private static ShowSeats load(int showId) throws SQLException {
+        ShowSeats fresh = new ShowSeats();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // Unknown shows are not kept, so made-up IDs cannot fill the map
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.SHOW_EXISTS)) {
+                stmt.setInt(1, showId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_SHOW_TICKETS)) {
+                stmt.setInt(1, showId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        fresh.mark(rs.getInt("RowNo"), rs.getInt("SeatNo"));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_SHOW_RESERVED_SEATS)) {
+                stmt.setInt(1, showId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        fresh.markSeatNumber(rs.getInt("SeatNumber"));
+                    }
+                }
+            } catch (SQLException e) {
+                // Older schemas have no per-seat reservations table; tickets are enough
+            }
+        }
+        // Another request may have loaded the same show meanwhile; first one wins
+        ShowSeats existing = SHOWS.putIfAbsent(showId, fresh);
+        return existing != null ? existing : fresh;
+    }
+
+    private static void loadReservedSeats(Connection conn, ConcurrentMap<Integer, ShowSeats> loaded) {
+        try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_RESERVED_SEATS);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                loaded.computeIfAbsent(rs.getInt("ShowID"), id -> new ShowSeats())
+                      .markSeatNumber(rs.getInt("SeatNumber"));
+            }
+        } catch (SQLException e) {
+            LOG.warn("Skipping reservations table while warming seat map: {}", e.getMessage());
+        }
+    }
+
+    static final class ShowSeats {
+        final long loadedAt = System.currentTimeMillis();
+        // Bit (seat - 1) of rows[row - 1] is set when that ticket seat is taken
+        private final AtomicLongArray rows = new AtomicLongArray(SeatAllocator.ROWS);
+        // Bit (seatNumber - 1) % 64 of word (seatNumber - 1) / 64 is set when that picker seat is reserved
+        private final AtomicLongArray pickerSeats = new AtomicLongArray((PICKER_SEATS + 63) / 64);
+        // Bumped on every change, so anything rendered from this show can tell it is stale
+        private final AtomicLong version = new AtomicLong();
+
+        long version() {
+            return version.get();
+        }
+
+        boolean isTaken(int row, int seat) {
+            return inRange(row, seat) && (rows.get(row - 1) & bit(seat)) != 0;
+        }
+
+        // Picker seat numbers run 1..120 across 8 rows of 15
+        boolean isSeatNumberTaken(int seatNumber) {
+            return seatNumber >= 1 && seatNumber <= PICKER_SEATS
+                && (pickerSeats.get((seatNumber - 1) >>> 6) & (1L << ((seatNumber - 1) & 63))) != 0;
+        }
+
+        boolean tryReserve(int row, int seat) {
+            if (!inRange(row, seat)) {
+                return false;
+            }
+            long mask = bit(seat);
+            while (true) {
+                long current = rows.get(row - 1);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (rows.compareAndSet(row - 1, current, current | mask)) {
+                    version.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        void release(int row, int seat) {
+            if (!inRange(row, seat)) {
+                return;
+            }
+            long mask = bit(seat);
+            while (true) {
+                long current = rows.get(row - 1);
+                if ((current & mask) == 0) {
+                    return;
+                }
+                if (rows.compareAndSet(row - 1, current, current & ~mask)) {
+                    version.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        /** All-or-nothing: either every seat is reserved or none are. */
+        boolean tryReserveAll(List<SeatAllocator.Seat> seats) {
+            List<SeatAllocator.Seat> reserved = new ArrayList<>(seats.size());
+            for (SeatAllocator.Seat seat : seats) {
+                if (!tryReserve(seat.row, seat.seat)) {
+                    releaseAll(reserved);
+                    return false;
+                }
+                reserved.add(seat);
+            }
+            return true;
+        }
+
+        void releaseAll(List<SeatAllocator.Seat> seats) {
+            for (SeatAllocator.Seat seat : seats) {
+                release(seat.row, seat.seat);
+            }
+        }
+
+        /**
+         * Picks seats from a snapshot and claims them with CAS. If another booking grabbed one of
+         * them in between, the snapshot is retaken. Returns null when the show cannot fit the request.
+         */
+        List<SeatAllocator.Seat> reserve(int count, boolean adjacent) {
+            while (true) {
+                List<SeatAllocator.Seat> picked = new SeatAllocator(snapshot()).allocate(count, adjacent);
+                if (picked == null) {
+                    return null;
+                }
+                if (tryReserveAll(picked)) {
+                    return picked;
+                }
+            }
+        }
+
+        long[] snapshot() {
+            long[] copy = new long[SeatAllocator.ROWS];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = rows.get(i);
+            }
+            return copy;
+        }
+
+        void mark(int row, int seat) {
+            tryReserve(row, seat);
+        }
+
+        void markSeatNumber(int seatNumber) {
+            if (seatNumber < 1 || seatNumber > PICKER_SEATS) {
+                return;
+            }
+            int word = (seatNumber - 1) >>> 6;
+            long mask = 1L << ((seatNumber - 1) & 63);
+            while (true) {
+                long current = pickerSeats.get(word);
+                if ((current & mask) != 0) {
+                    return;
+                }
+                if (pickerSeats.compareAndSet(word, current, current | mask)) {
+                    version.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        private static boolean inRange(int row, int seat) {
+            return row >= 1 && row <= SeatAllocator.ROWS && seat >= 1 && seat <= SeatAllocator.SEATS_PER_ROW;
+        }
+
+        private static long bit(int seat) {
+            return 1L << (seat - 1);
+        }
+    }
+}
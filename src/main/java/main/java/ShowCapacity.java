@@ -0,0 +1,147 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Guards show_timings.AvailableSeats. Seats come off with a single guarded decrement
+ * ({@code ... WHERE AvailableSeats >= ?}), so two bookings can never both pass a check that
+ * only one of them fits, and nothing is locked up front with SELECT ... FOR UPDATE.
+ *
+ * Booking transactions run through {@link #inTransaction}, which retries deadlocks and lock
+ * timeouts with exponential backoff. A show that has just had such a conflict is treated as
+ * contended for a short while: its bookings then queue on an in-process lock stripe instead
+ * of piling up on the database row lock, and retries always take the stripe.
+ *
+ * Configuration: -Dbooking.maxAttempts (default 3), -Dbooking.retryBackoffMs base delay
+ * (default 10), -Dbooking.contendedMs (default 1000), -Dbooking.lockStripes (default 64).
+ */
+final class ShowCapacity {
+    private static final Log LOG = Log.get(ShowCapacity.class);
+    static final int MAX_ATTEMPTS = Math.max(1, Integer.getInteger("booking.maxAttempts", 3));
+    static final long RETRY_BACKOFF_MILLIS = Long.getLong("booking.retryBackoffMs", 10L);
+    static final long CONTENDED_MILLIS = Long.getLong("booking.contendedMs", 1_000L);
+    static final int LOCK_STRIPES = Math.max(1, Integer.getInteger("booking.lockStripes", 64));
+
+    // MySQL: ER_LOCK_WAIT_TIMEOUT and ER_LOCK_DEADLOCK
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int MYSQL_DEADLOCK = 1213;
+
+    private static final ReentrantLock[] STRIPES = new ReentrantLock[LOCK_STRIPES];
+    // Show ID to the time its contended period ends
+    private static final ConcurrentMap<Integer, Long> CONTENDED_UNTIL = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            STRIPES[i] = new ReentrantLock();
+        }
+    }
+
+    @FunctionalInterface
+    interface Transaction<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private ShowCapacity() {
+    }
+
+    /**
+     * Takes {@code seats} off the show in the caller's transaction, or throws if fewer are
+     * left. Holds the row lock until the transaction ends, so call it as late as possible.
+     */
+    static void take(Connection conn, int showId, int seats) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(Sql.TAKE_SEATS)) {
+            stmt.setInt(1, seats);
+            stmt.setInt(2, showId);
+            stmt.setInt(3, seats);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Not enough seats available");
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} in a transaction on a pooled connection and commits it. Conflicts
+     * are rolled back and retried up to {@link #MAX_ATTEMPTS} times; any other failure is
+     * rolled back and rethrown. {@code work} must be safe to run again from the start.
+     */
+    static <T> T inTransaction(int showId, Transaction<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            ReentrantLock stripe = null;
+            if (attempt > 1 || isContended(showId)) {
+                stripe = STRIPES[Math.floorMod(showId, LOCK_STRIPES)];
+                stripe.lock();
+            }
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    T result = work.run(conn);
+                    conn.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    rollbackQuietly(conn);
+                    throw e;
+                }
+            } catch (SQLException e) {
+                if (!isConflict(e) || attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                CONTENDED_UNTIL.put(showId, System.currentTimeMillis() + CONTENDED_MILLIS);
+                LOG.debug("Booking conflict on show {} (attempt {}), retrying: {}", showId, attempt, e.getMessage());
+            } finally {
+                if (stripe != null) {
+                    stripe.unlock();
+                }
+            }
+            backoff(attempt);
+        }
+    }
+
+    private static boolean isContended(int showId) {
+        Long until = CONTENDED_UNTIL.get(showId);
+        if (until == null) {
+            return false;
+        }
+        if (until > System.currentTimeMillis()) {
+            return true;
+        }
+        CONTENDED_UNTIL.remove(showId, until);
+        return false;
+    }
+
+    // Deadlocks, serialization failures and lock timeouts (HYT00 is H2's); the transaction can simply be run again
+    static boolean isConflict(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException
+            || (state != null && (state.startsWith("40") || state.equals("HYT00")))
+            || e.getErrorCode() == MYSQL_LOCK_WAIT_TIMEOUT
+            || e.getErrorCode() == MYSQL_DEADLOCK;
+    }
+
+    // Somewhere between half and all of an exponentially growing delay, so retries of one show spread out
+    private static void backoff(int attempt) throws SQLException {
+        long ceiling = RETRY_BACKOFF_MILLIS << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying a booking", e);
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            LOG.warn("Rollback failed", e);
+        }
+    }
+}
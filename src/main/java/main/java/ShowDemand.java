@@ -0,0 +1,182 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.SingleFlight;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live demand for every show, kept in memory: seats left (show_timings.AvailableSeats) and
+ * how fast seats have been selling lately. Both feed a price multiplier that is worked out
+ * in constant time from these counters, so pricing a seat never aggregates anything in
+ * the database.
+ *
+ * Shows are loaded with the {@link Catalog} index and on first use. Bookings and
+ * cancellations move the counters as they commit, and every catalog refresh and show
+ * timings query resets them to what the database says, which corrects any drift.
+ *
+ * The multiplier is 1 plus an occupancy uplift, growing linearly from the occupancy
+ * threshold to full, and a velocity uplift, growing linearly up to the given seats sold per
+ * window. It is rounded down to a step so prices move in visible increments rather than on
+ * every booking.
+ *
+ * Configuration: -Dpricing.dynamic (default true), -Dpricing.showCapacity (default 100),
+ * -Dpricing.occupancyThreshold (default 0.5), -Dpricing.occupancyUplift (default 0.5),
+ * -Dpricing.velocityWindowMs (default 60000), -Dpricing.velocitySeats (default 20),
+ * -Dpricing.velocityUplift (default 0.25), -Dpricing.multiplierStep (default 0.05).
+ */
+final class ShowDemand {
+    static final boolean DYNAMIC = Boolean.parseBoolean(System.getProperty("pricing.dynamic", "true"));
+    static final int SHOW_CAPACITY = Math.max(1,
+        Integer.getInteger("pricing.showCapacity", SeatAllocator.ROWS * SeatAllocator.SEATS_PER_ROW));
+    static final double OCCUPANCY_THRESHOLD = doubleProperty("pricing.occupancyThreshold", 0.5);
+    static final double OCCUPANCY_UPLIFT = doubleProperty("pricing.occupancyUplift", 0.5);
+    static final long VELOCITY_WINDOW_MILLIS = Math.max(1L, Long.getLong("pricing.velocityWindowMs", 60_000L));
+    static final double VELOCITY_SEATS = doubleProperty("pricing.velocitySeats", 20);
+    static final double VELOCITY_UPLIFT = doubleProperty("pricing.velocityUplift", 0.25);
+    static final double MULTIPLIER_STEP = doubleProperty("pricing.multiplierStep", 0.05);
+
+    private static final ConcurrentMap<Integer, Show> SHOWS = new ConcurrentHashMap<>();
+    private static final SingleFlight<Integer, Show> LOADS = new SingleFlight<>();
+
+    static final class Show {
+        final int showId;
+        final int screenNo;
+        final LocalTime showTime;
+        private int availableSeats;
+        // Seats sold, decayed exponentially over the velocity window, as of soldAt
+        private double recentlySold;
+        private long soldAt;
+
+        Show(int showId, int screenNo, LocalTime showTime, int availableSeats) {
+            this.showId = showId;
+            this.screenNo = screenNo;
+            this.showTime = showTime;
+            this.availableSeats = availableSeats;
+        }
+
+        synchronized int availableSeats() {
+            return availableSeats;
+        }
+
+        /** Current multiplier on the rule price of this show's seats; 1 with dynamic pricing off. */
+        synchronized double multiplier() {
+            if (!DYNAMIC) {
+                return 1.0;
+            }
+            double occupancy = Math.min(1.0, Math.max(0.0, 1.0 - (double) availableSeats / SHOW_CAPACITY));
+            double uplift = 0;
+            if (occupancy > OCCUPANCY_THRESHOLD && OCCUPANCY_THRESHOLD < 1.0) {
+                uplift += OCCUPANCY_UPLIFT * (occupancy - OCCUPANCY_THRESHOLD) / (1.0 - OCCUPANCY_THRESHOLD);
+            }
+            if (VELOCITY_SEATS > 0) {
+                uplift += VELOCITY_UPLIFT * Math.min(1.0, decayed(System.currentTimeMillis()) / VELOCITY_SEATS);
+            }
+            if (MULTIPLIER_STEP > 0) {
+                // Nudged up first so a product like 0.15000000000000002 / 0.05 does not lose a step
+                uplift = Math.floor(uplift / MULTIPLIER_STEP + 1e-9) * MULTIPLIER_STEP;
+            }
+            return Math.round((1.0 + uplift) * 10_000) / 10_000.0;
+        }
+
+        private synchronized void sold(int seats) {
+            long now = System.currentTimeMillis();
+            availableSeats -= seats;
+            if (seats > 0) {
+                recentlySold = decayed(now) + seats;
+                soldAt = now;
+            }
+        }
+
+        private synchronized void reset(int available) {
+            availableSeats = available;
+        }
+
+        private double decayed(long now) {
+            if (recentlySold == 0) {
+                return 0;
+            }
+            return recentlySold * Math.exp(-(double) Math.max(0, now - soldAt) / VELOCITY_WINDOW_MILLIS);
+        }
+    }
+
+    private ShowDemand() {
+    }
+
+    /** The show's demand if it is in memory, without loading it. */
+    static Show get(int showId) {
+        return SHOWS.get(showId);
+    }
+
+    /** The show's demand, loaded once if it is not in memory yet; null if there is no such show. */
+    static Show forShow(int showId) throws SQLException {
+        Show show = SHOWS.get(showId);
+        if (show != null) {
+            return show;
+        }
+        return LOADS.run(showId, () -> loadShow(showId));
+    }
+
+    private static Show loadShow(int showId) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_SHOW)) {
+            stmt.setInt(1, showId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return observe(showId, rs.getInt("ScreenNo"), rs.getString("ShowTime"), rs.getInt("AvailableSeats"));
+            }
+        }
+    }
+
+    /**
+     * Records what the database says about a show, from a query that read it anyway. Seats
+     * left are reset to the database value; the sales velocity is kept.
+     */
+    static Show observe(int showId, int screenNo, String showTime, int availableSeats) {
+        LocalTime time = Pricing.showTime(showTime);
+        Show show = SHOWS.get(showId);
+        if (show != null && show.screenNo == screenNo && Objects.equals(show.showTime, time)) {
+            show.reset(availableSeats);
+            return show;
+        }
+        // New, or rescheduled since it was loaded; either way it starts over with these details
+        Show fresh = new Show(showId, screenNo, time, availableSeats);
+        SHOWS.put(showId, fresh);
+        return fresh;
+    }
+
+    /** Like {@link #observe} but leaves a show that is already in memory alone. */
+    static Show observeIfAbsent(int showId, int screenNo, String showTime, int availableSeats) {
+        Show show = SHOWS.get(showId);
+        return show != null ? show : observe(showId, screenNo, showTime, availableSeats);
+    }
+
+    /** After a booking commits. */
+    static void sold(int showId, int seats) {
+        Show show = SHOWS.get(showId);
+        if (show != null) {
+            show.sold(seats);
+        }
+    }
+
+    /** After a cancellation commits. */
+    static void released(int showId, int seats) {
+        Show show = SHOWS.get(showId);
+        if (show != null) {
+            show.sold(-seats);
+        }
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
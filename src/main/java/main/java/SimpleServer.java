@@ -3,103 +3,168 @@ package main.java;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import util.ConnectionPool;
 import util.DatabaseConnection;
+import util.JsonReader;
+import util.JsonWriter;
+import util.Log;
+import util.Metrics;
+import util.ResponseCache;
+import util.ServerExecutors;
+import util.SingleFlight;
+import util.StaticAssets;
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.sql.DriverManager;
 import java.sql.Statement;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
 
 public class SimpleServer {
-    private static final int PORT = 8080;
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/ticketbookingsystem";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "Root@123";
+    private static final Log LOG = Log.get(SimpleServer.class);
+    private static final int PORT = Integer.getInteger("server.port", 8080);
+    private static final Pattern REQUEST_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
 
-    // Add these constants after the existing DB constants
-    private static final String GET_SHOW_TIMINGS = "SELECT s.ShowID, s.ShowTime, s.ShowDate, s.ScreenNo, s.AvailableSeats, m.Title as MovieName " +
-                                                 "FROM show_timings s JOIN movie m ON s.MovieID = m.MovieID " +
-                                                 "WHERE s.MovieID = ?";
-    private static final String GET_SEATS = "SELECT SeatNumber FROM reservations WHERE ShowID = ?";
-    private static final String UPDATE_AVAILABLE_SEATS = "UPDATE show_timings SET AvailableSeats = AvailableSeats - ? WHERE ShowID = ?";
+    // Encoded catalog responses (movies, snacks, show timings); writers invalidate what they change
+    private static final ResponseCache CATALOG_CACHE = new ResponseCache(Long.getLong("cache.ttlMs", 30_000L),
+        Integer.getInteger("cache.maxEntries", 10_000));
+    // Concurrent misses for the same catalog key and generation share one query
+    private static final SingleFlight<String, ResponseCache.Entry> CATALOG_LOADS = new SingleFlight<>();
 
     public static void main(String[] args) throws Exception {
+        // With Nagle on, a response sent as headers then body waits ~40ms on the client's delayed ACK;
+        // the JDK server reads this once, so it must be set before the first HttpServer is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
         
         // Serve static files
-        server.createContext("/", new StaticFileHandler());
+        route(server, "/", new StaticFileHandler());
         
         // API endpoints
-        server.createContext("/api/movies", new MoviesHandler());
-        server.createContext("/api/book", new BookingHandler());
-        server.createContext("/api/snacks", new SnacksHandler());
-        server.createContext("/api/snacks/order", new SnackOrderHandler());
-        server.createContext("/api/booking/confirm", new BookingConfirmHandler());
-        server.createContext("/api/booking/cancel", new BookingCancelHandler());
+        route(server, "/api/movies", new MoviesHandler());
+        route(server, "/api/movies/search", new MovieSearchHandler());
+        route(server, "/api/book", new BookingHandler());
+        route(server, "/api/book/hold", new SeatHoldHandler());
+        route(server, "/api/snacks", new SnacksHandler());
+        route(server, "/api/snacks/order", new SnackOrderHandler());
+        route(server, "/api/booking/confirm", new BookingConfirmHandler());
+        route(server, "/api/booking/cancel", new BookingCancelHandler());
+        route(server, "/api/booking/cancel/bulk", new BulkCancelHandler());
         
         // Authentication endpoints
-        server.createContext("/api/login", new LoginHandler());
-        server.createContext("/api/signup", new SignupHandler());
+        route(server, "/api/login", new LoginHandler());
+        route(server, "/api/signup", new SignupHandler());
         
         // New endpoints
-        server.createContext("/api/showtimings", new ShowTimingsHandler());
-        server.createContext("/api/seats", new SeatsHandler());
+        route(server, "/api/showtimings", new ShowTimingsHandler());
+        route(server, "/api/seats", new SeatsHandler());
         
         // Add this in the main method after other endpoint creation
-        server.createContext("/api/admin/snacks", new SnackInventoryHandler());
+        route(server, "/api/admin/snacks", new SnackInventoryHandler());
+        route(server, "/api/admin/pricing", new PricingHandler());
+        
+        // Request, query and pool metrics for Prometheus
+        route(server, "/api/metrics", new MetricsHandler());
+        
+        // Load seat state for every show with bookings so seat lookups do not hit MySQL
+        try {
+            LOG.info("Seat map warmed for {} shows", SeatMap.warm());
+        } catch (SQLException e) {
+            LOG.warn("Could not warm seat map, shows will load on first use: {}", e.getMessage());
+        }
+        
+        // Ticket prices are computed from rules held in memory
+        try {
+            LOG.info("Loaded {} price rules", Pricing.load());
+        } catch (SQLException e) {
+            LOG.warn("Could not load price rules, every seat costs {} until they are reloaded: {}",
+                Pricing.DEFAULT_PRICE, e.getMessage());
+        }
+        
+        // Paginated catalog listings come from an in-memory index, which also loads the demand
+        // counters that seat prices follow
+        try {
+            LOG.info("Catalog indexed {} show timings", Catalog.load());
+        } catch (SQLException e) {
+            LOG.warn("Could not index the catalog, it will be retried in the background: {}", e.getMessage());
+        }
+        Catalog.start();
         
-        server.setExecutor(null);
+        // Trending movies/snacks come from in-memory counters, reconciled with the database in the background
+        Trending.start();
+        
+        // Snack orders and confirmations are logged first and applied in the background;
+        // anything a previous run left unapplied is replayed before stock is loaded
+        try {
+            BookingLedger.open();
+        } catch (IOException | SQLException e) {
+            LOG.warn("Could not open the booking ledger, snack orders and confirmations are refused until it is: {}",
+                e.getMessage());
+            BookingLedger.openInBackground();
+        }
+        
+        // Snack stock is reserved in memory and written behind to snackscounter
+        try {
+            LOG.info("Snack inventory loaded for {} snacks", SnackInventory.load());
+        } catch (SQLException e) {
+            LOG.warn("Could not load snack inventory, will retry on first use: {}", e.getMessage());
+        }
+        SnackInventory.start();
+        
+        // Requests run off the dispatcher thread so one slow booking cannot stall the rest
+        Executor executor = ServerExecutors.fromSystemProperties();
+        server.setExecutor(executor);
         server.start();
         
-        System.out.println("Server started on port " + PORT);
-        System.out.println("Open http://localhost:" + PORT + " in your browser");
+        // Return pooled connections to MySQL cleanly on Ctrl+C
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            BookingLedger.drain(BookingLedger.DRAIN_TIMEOUT_MILLIS);
+            try {
+                SnackInventory.flush();
+            } catch (SQLException e) {
+                LOG.warn("Final snack inventory flush failed, the journal will be applied on restart: {}", e.getMessage());
+            }
+            DatabaseConnection.shutdown();
+            Log.shutdown();
+        }));
+        
+        LOG.info("Server started on port {} (executor: {})", PORT, ServerExecutors.describe(executor));
+        LOG.info("Open http://localhost:{} in your browser", PORT);
     }
     
     static class StaticFileHandler implements HttpHandler {
-        private final Map<String, String> mimeTypes = new HashMap<>();
+        private final StaticAssets assets;
         
-        StaticFileHandler() {
-            mimeTypes.put(".html", "text/html");
-            mimeTypes.put(".css", "text/css");
-            mimeTypes.put(".js", "application/javascript");
-            mimeTypes.put(".json", "application/json");
+        StaticFileHandler() throws IOException {
+            // Loaded once into memory; -Dserver.dev=true reloads files as they are edited
+            assets = StaticAssets.load(Paths.get("src/main/webapp"), Boolean.getBoolean("server.dev"));
+            LOG.info("Loaded {} static assets", assets.size());
         }
         
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            path = path.equals("/") ? "/index.html" : path;
-            
-            final String finalPath = path;
-            String contentType = mimeTypes.entrySet().stream()
-                .filter(e -> finalPath.endsWith(e.getKey()))
-                .map(Map.Entry::getValue)
-                .findFirst()
-                .orElse("text/plain");
-                
-            byte[] response;
-            try {
-                response = Files.readAllBytes(Paths.get("src/main/webapp" + finalPath));
-                exchange.getResponseHeaders().set("Content-Type", contentType);
-                exchange.sendResponseHeaders(200, response.length);
-            } catch (IOException e) {
-                response = "404 Not Found".getBytes();
-                exchange.sendResponseHeaders(404, response.length);
-            }
-            
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response);
-            }
+            assets.serve(exchange);
         }
     }
     
@@ -111,92 +176,166 @@ public class SimpleServer {
                 return;
             }
             
+            // A paging parameter asks for a page from the index; without one the full list stays as it was
+            String query = exchange.getRequestURI().getRawQuery();
+            Map<String, String> params;
+            try {
+                params = query != null ? queryParams(query) : Collections.emptyMap();
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid query string\"}", 400);
+                return;
+            }
+            if (!Collections.disjoint(params.keySet(), Catalog.MovieQuery.PARAMS)) {
+                sendMoviePage(exchange, params);
+                return;
+            }
+            
+            String cacheKey = "/api/movies";
+            if (sendCachedJson(exchange, cacheKey)) {
+                return;
+            }
+            long cacheGeneration = CATALOG_CACHE.generation(cacheKey);
+            
             Connection conn = null;
             PreparedStatement stmt = null;
             ResultSet rs = null;
             
             try {
-                System.out.println("Attempting to connect to database...");
                 conn = DatabaseConnection.getConnection();
-                System.out.println("Connected successfully!");
                 
-                // First get the most popular movieId based on ticket sales
-                int trendingMovieId = 0;
-                PreparedStatement trendingStmt = conn.prepareStatement(
-                    "SELECT m.MovieID FROM movie m " +
-                    "JOIN show_timings s ON m.MovieID = s.MovieID " +
-                    "JOIN tickets t ON s.ShowID = t.ShowID " +
-                    "GROUP BY m.MovieID " +
-                    "ORDER BY COUNT(t.TicketID) DESC LIMIT 1"
-                );
-                ResultSet trendingRs = trendingStmt.executeQuery();
-                if (trendingRs.next()) {
-                    trendingMovieId = trendingRs.getInt("MovieID");
-                }
-                trendingRs.close();
-                trendingStmt.close();
+                // Most popular movie by tickets sold, kept up to date in memory
+                int trendingMovieId = Trending.topMovie();
                 
-                stmt = conn.prepareStatement("SELECT * FROM movie");
-                System.out.println("Executing query: SELECT * FROM movie");
+                stmt = conn.prepareStatement(Sql.MOVIES);
                 rs = stmt.executeQuery();
-                System.out.println("Query executed successfully!");
                 
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("[");
-                boolean first = true;
-                
-                while (rs.next()) {
-                    int movieId = rs.getInt("MovieID");
-                    boolean isTrending = (movieId == trendingMovieId);
-                    
-                    if (!first) {
-                        jsonBuilder.append(",");
+                ResultSet movies = rs;
+                byte[] response = JsonWriter.toBytes(json -> {
+                    json.beginArray();
+                    while (movies.next()) {
+                        int movieId = movies.getInt("MovieID");
+                        json.beginObject()
+                            .field("id", movieId)
+                            .field("title", movies.getString("Title"))
+                            .field("genre", movies.getString("Genre"))
+                            .field("duration", movies.getInt("Duration"))
+                            .field("releaseDate", movies.getString("ReleaseDate"))
+                            .field("trending", movieId == trendingMovieId)
+                            .endObject();
                     }
-                    jsonBuilder.append("{")
-                        .append("\"id\":").append(movieId).append(",")
-                        .append("\"title\":\"").append(escapeJson(rs.getString("Title"))).append("\",")
-                        .append("\"genre\":\"").append(escapeJson(rs.getString("Genre"))).append("\",")
-                        .append("\"duration\":").append(rs.getInt("Duration")).append(",")
-                        .append("\"releaseDate\":\"").append(rs.getString("ReleaseDate")).append("\",")
-                        .append("\"trending\":").append(isTrending)
-                        .append("}");
-                    first = false;
-                }
-                jsonBuilder.append("]");
-                
-                byte[] response = jsonBuilder.toString().getBytes(StandardCharsets.UTF_8);
-                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().set("Content-Type", "application/json");
-                exchange.sendResponseHeaders(200, response.length);
-                
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response);
-                }
+                    json.endArray();
+                });
+                sendJsonEntry(exchange, CATALOG_CACHE.put(cacheKey, response, cacheGeneration));
                 
             } catch (Exception e) {
-                System.err.println("Error in MoviesHandler: " + e.getMessage());
-                e.printStackTrace();
-                String error = "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}";
-                byte[] response = error.getBytes(StandardCharsets.UTF_8);
-                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().set("Content-Type", "application/json");
-                exchange.sendResponseHeaders(500, response.length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response);
-                }
+                LOG.error("Loading movies failed", e);
+                sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
             } finally {
                 try {
                     if (rs != null) rs.close();
                     if (stmt != null) stmt.close();
                     if (conn != null) conn.close();
                 } catch (SQLException e) {
-                    System.err.println("Error closing resources: " + e.getMessage());
+                    LOG.warn("Error closing resources: {}", e.getMessage());
+                }
+            }
+        }
+        
+        private static void sendMoviePage(HttpExchange exchange, Map<String, String> params) throws IOException {
+            Catalog.Page<Catalog.Movie> page;
+            try {
+                page = Catalog.movies(Catalog.MovieQuery.parse(params));
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 400);
+                return;
+            }
+            int trendingMovieId = Trending.topMovie();
+            try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                out.beginObject().name("movies").beginArray();
+                for (Catalog.Movie movie : page.items) {
+                    out.beginObject()
+                        .field("id", movie.id)
+                        .field("title", movie.title)
+                        .field("genre", movie.genre)
+                        .field("duration", movie.duration)
+                        .field("releaseDate", movie.releaseDate)
+                        .field("trending", movie.id == trendingMovieId)
+                        .endObject();
                 }
+                out.endArray()
+                    .field("nextCursor", page.nextCursor)
+                    .endObject();
+            }
+        }
+    }
+    
+    static class MovieSearchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendJsonResponse(exchange, "{\"error\": \"Method not allowed\"}", 405);
+                return;
+            }
+            
+            String query = exchange.getRequestURI().getRawQuery();
+            Map<String, String> params;
+            try {
+                params = query != null ? queryParams(query) : Collections.emptyMap();
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid query string\"}", 400);
+                return;
+            }
+            String q = params.get("q");
+            if (q == null || q.isBlank() || q.length() > MovieSearch.MAX_QUERY_LENGTH) {
+                sendJsonResponse(exchange, "{\"error\": \"q must be 1 to " + MovieSearch.MAX_QUERY_LENGTH + " characters\"}", 400);
+                return;
+            }
+            int limit = 10;
+            if (params.containsKey("limit")) {
+                try {
+                    limit = Integer.parseInt(params.get("limit"));
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if (limit < 1 || limit > MovieSearch.MAX_RESULTS) {
+                    sendJsonResponse(exchange, "{\"error\": \"limit must be between 1 and " + MovieSearch.MAX_RESULTS + "\"}", 400);
+                    return;
+                }
+            }
+            
+            // Answered from the in-memory index; the last word matches as a prefix while it is being typed
+            List<Catalog.Movie> movies = MovieSearch.search(q, limit);
+            int trendingMovieId = Trending.topMovie();
+            try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                out.beginObject().name("movies").beginArray();
+                for (Catalog.Movie movie : movies) {
+                    out.beginObject()
+                        .field("id", movie.id)
+                        .field("title", movie.title)
+                        .field("genre", movie.genre)
+                        .field("duration", movie.duration)
+                        .field("releaseDate", movie.releaseDate)
+                        .field("trending", movie.id == trendingMovieId)
+                        .endObject();
+                }
+                out.endArray().endObject();
             }
         }
     }
     
     static class BookingHandler implements HttpHandler {
+        // What the booking transaction wrote, for the response
+        private static final class Booked {
+            int reservationId;
+            int movieId;
+            String movieTitle = "";
+            int screenNo;
+            String showTime = "";
+            String showDate = "";
+            // Row * 100 + seat to the price written on that ticket
+            final Map<Integer, Double> prices = new HashMap<>();
+        }
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equals("POST")) {
@@ -204,239 +343,282 @@ public class SimpleServer {
                 return;
             }
             
-            Connection conn = null;
+            SeatMap.ShowSeats showSeats = null;
+            List<SeatAllocator.Seat> seats = null;
             try {
-                // Read request body
-                StringBuilder requestBody = new StringBuilder();
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        requestBody.append(line);
-                    }
-                }
-                String json = requestBody.toString();
-                System.out.println("Received JSON: " + json); // Debug log
-                
-                // Parse JSON manually to avoid dependency
-                String name = SimpleServer.extractJsonValue(json, "name");
-                int age = Integer.parseInt(SimpleServer.extractJsonValue(json, "age"));
-                String gender = SimpleServer.extractJsonValue(json, "gender");
-                int movieId = Integer.parseInt(SimpleServer.extractJsonValue(json, "movieId"));
-                int numSeats = Integer.parseInt(SimpleServer.extractJsonValue(json, "seats"));
+                // Bind the request body in one pass
+                Requests.Booking request = Requests.Booking.read(exchange);
                 
-                // Parse showId from the JSON - this is the specific show timing the user selected
-                int showId = Integer.parseInt(SimpleServer.extractJsonValue(json, "showId"));
-                
-                conn = DatabaseConnection.getConnection();
-                conn.setAutoCommit(false);
+                // showId is the specific show timing the user selected
+                int showId = request.showId;
                 
-                // First, check if there are enough seats available for this show
-                PreparedStatement checkSeatsStmt = conn.prepareStatement(
-                    "SELECT AvailableSeats FROM show_timings WHERE ShowID = ?"
-                );
-                checkSeatsStmt.setInt(1, showId);
-                ResultSet seatsRs = checkSeatsStmt.executeQuery();
+                // Optional: keep the whole group together in one row
+                boolean adjacent = request.adjacent;
                 
-                if (!seatsRs.next()) {
-                    throw new SQLException("Show timing not found");
+                // A quote from the seat map holds its price; checked before any seat is claimed
+                PriceQuotes.Quote quote = null;
+                if (request.quote != null) {
+                    quote = PriceQuotes.verify(request.quote, showId);
+                    if (quote == null) {
+                        SimpleServer.sendJsonResponse(exchange, "{\"error\": \"Price quote has expired or is not valid, reload the seat map\"}", 409);
+                        return;
+                    }
                 }
                 
-                int availableSeats = seatsRs.getInt("AvailableSeats");
-                if (availableSeats < numSeats) {
-                    throw new SQLException("Not enough seats available. Only " + availableSeats + " seats left.");
+                // Load (or reuse) the in-memory seat map before taking a connection for the transaction
+                showSeats = SeatMap.forShow(showId);
+                if (showSeats == null) {
+                    SimpleServer.sendJsonResponse(exchange, "{\"error\": \"Show timing not found\"}", 404);
+                    return;
                 }
                 
-                // First insert customer
-                PreparedStatement customerStmt = conn.prepareStatement(
-                    "INSERT INTO customer (Name, Age, Gender) VALUES (?, ?, ?)",
-                    PreparedStatement.RETURN_GENERATED_KEYS
-                );
-                customerStmt.setString(1, name);
-                customerStmt.setInt(2, age);
-                customerStmt.setString(3, gender);
-                customerStmt.executeUpdate();
-                
-                ResultSet rs = customerStmt.getGeneratedKeys();
-                int customerId = 0;
-                if (rs.next()) {
-                    customerId = rs.getInt(1);
+                // Confirming a hold from /api/book/hold books exactly the seats that were held
+                String holdId = request.holdId;
+                int numSeats;
+                if (holdId != null) {
+                    SeatHolds.Hold hold = SeatHolds.claim(holdId, showId);
+                    if (hold == null) {
+                        SimpleServer.sendJsonResponse(exchange, "{\"error\": \"Seat hold has expired or does not exist\"}", 409);
+                        return;
+                    }
+                    seats = hold.seats;
+                    numSeats = seats.size();
+                } else {
+                    numSeats = request.seats;
+                    // Claim the seats in the in-memory map; concurrent bookings can never pick the same seat
+                    seats = showSeats.reserve(numSeats, adjacent);
+                    if (seats == null) {
+                        throw new SQLException(adjacent
+                            ? "No block of " + numSeats + " adjacent seats available"
+                            : "No available seats found");
+                    }
                 }
                 
-                // Create reservation
-                PreparedStatement reservationStmt = conn.prepareStatement(
-                    "INSERT INTO reservation (DateTime, Mode, CustomerID, MovieID) VALUES (NOW(), 'Online', ?, ?)",
-                    PreparedStatement.RETURN_GENERATED_KEYS
-                );
-                reservationStmt.setInt(1, customerId);
-                reservationStmt.setInt(2, movieId);
-                reservationStmt.executeUpdate();
+                // Retried from the start on deadlocks and lock timeouts, with the same seats
+                List<SeatAllocator.Seat> claimed = seats;
+                PriceQuotes.Quote quoted = quote;
+                Booked booked = ShowCapacity.inTransaction(showId, conn -> insertBooking(conn, request, claimed, quoted));
                 
-                rs = reservationStmt.getGeneratedKeys();
-                int reservationId = 0;
-                if (rs.next()) {
-                    reservationId = rs.getInt(1);
-                }
+                LOG.debug("Booked {} tickets for reservation {} on show {}", numSeats, booked.reservationId, showId);
                 
-                // Get movie details and show timing details
-                PreparedStatement showDetailsStmt = conn.prepareStatement(
-                    "SELECT m.Title, s.ScreenNo, s.ShowTime, s.ShowDate " +
-                    "FROM show_timings s JOIN movie m ON s.MovieID = m.MovieID " +
-                    "WHERE s.ShowID = ?"
-                );
-                showDetailsStmt.setInt(1, showId);
-                ResultSet showDetailsRs = showDetailsStmt.executeQuery();
+                // The tickets are persisted now, so the seats stay taken even if sending the response fails
+                List<SeatAllocator.Seat> bookedSeats = seats;
+                seats = null;
+                // Counted from the tickets written and the show's own movie, never from what the request claims
+                Trending.movieTicketsSold(booked.movieId, bookedSeats.size());
+                ShowDemand.sold(showId, bookedSeats.size());
+                // Only this movie's show timings list the seats that just went
+                CATALOG_CACHE.invalidateKey(showTimingsKey(booked.movieId));
+                CATALOG_CACHE.invalidate("/api/movies");
+                Catalog.refreshSoon();
                 
-                String movieTitle = "";
-                int screenNo = 0;
-                String showTime = "";
-                String showDate = "";
-                
-                if (showDetailsRs.next()) {
-                    movieTitle = showDetailsRs.getString("Title");
-                    screenNo = showDetailsRs.getInt("ScreenNo");
-                    showTime = showDetailsRs.getString("ShowTime");
-                    showDate = showDetailsRs.getString("ShowDate");
-                } else {
-                    throw new SQLException("Show details not found");
+                // Build success response with ticket details
+                try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                    out.beginObject()
+                        .field("success", true)
+                        .field("message", "Booking completed successfully!")
+                        .field("reservationId", booked.reservationId)
+                        .name("ticket").beginObject()
+                            .field("reservationId", booked.reservationId)
+                            .field("movieTitle", booked.movieTitle)
+                            .name("tickets").beginArray();
+                    for (SeatAllocator.Seat seat : bookedSeats) {
+                        out.beginObject()
+                            .field("rowNo", seat.row)
+                            .field("seatNo", seat.seat)
+                            .field("screenNo", booked.screenNo)
+                            .field("price", booked.prices.get(seat.row * 100 + seat.seat))
+                            .endObject();
+                    }
+                    out.endArray()
+                            .field("dateTime", java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                            .field("showTime", booked.showTime)
+                            .field("showDate", booked.showDate)
+                            .field("screenNo", booked.screenNo)
+                        .endObject()
+                        .endObject();
                 }
                 
-                // Generate tickets
-                StringBuilder ticketsJson = new StringBuilder();
-                ticketsJson.append("[");
-                boolean first = true;
-                
-                System.out.println("Generating " + numSeats + " tickets...");
-                
-                for (int i = 0; i < numSeats; i++) {
-                    // Find an available seat by checking if it's already booked
-                    boolean seatFound = false;
-                    int rowNo = 0, seatNo = 0;
-                    double price = 200.00; // Default price
-                    
-                    // Try to find an available seat
-                    for (int row = 1; row <= 5 && !seatFound; row++) {
-                        for (int seat = 1; seat <= 20 && !seatFound; seat++) {
-                            // Check if this seat is already booked for this show
-                            PreparedStatement checkSeatStmt = conn.prepareStatement(
-                                "SELECT COUNT(*) FROM tickets " +
-                                "WHERE RowNo = ? AND SeatNo = ? AND ScreenNo = ? AND ShowID = ?"
-                            );
-                            checkSeatStmt.setInt(1, row);
-                            checkSeatStmt.setInt(2, seat);
-                            checkSeatStmt.setInt(3, screenNo);
-                            checkSeatStmt.setInt(4, showId);
-                            ResultSet checkRs = checkSeatStmt.executeQuery();
-                            
-                            if (checkRs.next() && checkRs.getInt(1) == 0) {
-                                // Seat is available
-                                rowNo = row;
-                                seatNo = seat;
-                                seatFound = true;
-                            }
-                        }
-                    }
-                    
-                    if (!seatFound) {
-                        System.err.println("No available seats found!");
-                        throw new SQLException("No available seats found");
-                    }
-                    
-                    System.out.println("Found available seat: Row=" + rowNo + ", Seat=" + seatNo + ", Screen=" + screenNo);
-                    
-                    // Create a new ticket
-                    PreparedStatement ticketStmt = conn.prepareStatement(
-                        "INSERT INTO tickets (SeatNo, RowNo, ScreenNo, ReservationID, Price, ShowID) VALUES (?, ?, ?, ?, ?, ?)",
-                        PreparedStatement.RETURN_GENERATED_KEYS
-                    );
-                    
-                    ticketStmt.setInt(1, seatNo);
-                    ticketStmt.setInt(2, rowNo);
-                    ticketStmt.setInt(3, screenNo);
-                    ticketStmt.setInt(4, reservationId);
-                    ticketStmt.setDouble(5, price);
-                    ticketStmt.setInt(6, showId);
-                    ticketStmt.executeUpdate();
-                    
-                    // Get the ticket ID
-                    ResultSet ticketRs = ticketStmt.getGeneratedKeys();
-                    int ticketId = 0;
-                    if (ticketRs.next()) {
-                        ticketId = ticketRs.getInt(1);
-                    }
-                    
-                    // Get the actual price
-                    PreparedStatement priceStmt = conn.prepareStatement(
-                        "SELECT price FROM tickets WHERE TicketID = ?"
-                    );
-                    priceStmt.setInt(1, ticketId);
-                    ResultSet priceRs = priceStmt.executeQuery();
-                    if (priceRs.next()) {
-                        price = priceRs.getDouble("price");
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
+            } catch (Exception e) {
+                LOG.error("Booking failed", e);
+                if (seats != null) {
+                    showSeats.releaseAll(seats);
+                }
+                SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
+            }
+        }
+        
+        private static Booked insertBooking(Connection conn, Requests.Booking request, List<SeatAllocator.Seat> seats,
+                PriceQuotes.Quote quote) throws SQLException {
+            int showId = request.showId;
+            int numSeats = seats.size();
+            Booked booked = new Booked();
+            int availableSeats;
+            
+            // Cheap early answer for a sold-out show; the guarded decrement below is what actually decides
+            try (PreparedStatement checkSeatsStmt = conn.prepareStatement(Sql.SEATS_LEFT)) {
+                checkSeatsStmt.setInt(1, showId);
+                try (ResultSet seatsRs = checkSeatsStmt.executeQuery()) {
+                    if (!seatsRs.next()) {
+                        throw new SQLException("Show timing not found");
                     }
                     
-                    System.out.println("Ticket created: Row=" + rowNo + ", Seat=" + seatNo + ", Screen=" + screenNo + ", Price=" + price);
-                    
-                    if (!first) {
-                        ticketsJson.append(",");
+                    availableSeats = seatsRs.getInt("AvailableSeats");
+                    if (availableSeats < numSeats) {
+                        throw new SQLException("Not enough seats available. Only " + availableSeats + " seats left.");
                     }
-                    ticketsJson.append("{")
-                        .append("\"rowNo\":").append(rowNo).append(",")
-                        .append("\"seatNo\":").append(seatNo).append(",")
-                        .append("\"screenNo\":").append(screenNo).append(",")
-                        .append("\"price\":").append(price)
-                        .append("}");
-                    first = false;
                 }
-                ticketsJson.append("]");
-                
-                // Update available seats in the show_timings table
-                PreparedStatement updateSeatsStmt = conn.prepareStatement(
-                    "UPDATE show_timings SET AvailableSeats = AvailableSeats - ? WHERE ShowID = ?"
-                );
-                updateSeatsStmt.setInt(1, numSeats);
-                updateSeatsStmt.setInt(2, showId);
-                updateSeatsStmt.executeUpdate();
-                
-                System.out.println("Tickets JSON: " + ticketsJson.toString());
-                System.out.println("Updated available seats for ShowID " + showId + ": reduced by " + numSeats);
-                
-                conn.commit();
-                
-                // Build success response with ticket details
-                String successResponse = String.format(
-                    "{\"success\":true,\"message\":\"Booking completed successfully!\",\"reservationId\":%d,\"ticket\":{\"reservationId\":%d,\"movieTitle\":\"%s\",\"tickets\":%s,\"dateTime\":\"%s\",\"showTime\":\"%s\",\"showDate\":\"%s\",\"screenNo\":%d}}",
-                    reservationId,
-                    reservationId,
-                    SimpleServer.escapeJson(movieTitle),
-                    ticketsJson.toString(),
-                    java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                    showTime,
-                    showDate,
-                    screenNo
-                );
-                
-                System.out.println("Final response: " + successResponse);
+            }
+            
+            // First insert customer
+            int customerId = 0;
+            try (PreparedStatement customerStmt = conn.prepareStatement(Sql.INSERT_CUSTOMER, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                customerStmt.setString(1, request.name);
+                customerStmt.setInt(2, request.age);
+                customerStmt.setString(3, request.gender);
+                customerStmt.executeUpdate();
                 
-                SimpleServer.sendJsonResponse(exchange, successResponse, 200);
+                try (ResultSet rs = customerStmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        customerId = rs.getInt(1);
+                    }
+                }
+            }
+            
+            // Create reservation
+            try (PreparedStatement reservationStmt = conn.prepareStatement(Sql.INSERT_RESERVATION, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                reservationStmt.setInt(1, customerId);
+                reservationStmt.setInt(2, request.movieId);
+                reservationStmt.executeUpdate();
                 
-            } catch (Exception e) {
-                e.printStackTrace();
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
+                try (ResultSet rs = reservationStmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        booked.reservationId = rs.getInt(1);
                     }
                 }
-                SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.close();
-                    } catch (SQLException e) {
-                        e.printStackTrace();
+            }
+            
+            // Get movie details and show timing details
+            try (PreparedStatement showDetailsStmt = conn.prepareStatement(Sql.SHOW_DETAILS)) {
+                showDetailsStmt.setInt(1, showId);
+                try (ResultSet showDetailsRs = showDetailsStmt.executeQuery()) {
+                    if (!showDetailsRs.next()) {
+                        throw new SQLException("Show details not found");
                     }
+                    booked.movieId = showDetailsRs.getInt("MovieID");
+                    booked.movieTitle = showDetailsRs.getString("Title");
+                    booked.screenNo = showDetailsRs.getInt("ScreenNo");
+                    booked.showTime = showDetailsRs.getString("ShowTime");
+                    booked.showDate = showDetailsRs.getString("ShowDate");
+                }
+            }
+            
+            // Insert every ticket in one batch, priced in memory at the quoted or the current demand;
+            // the response shows the same prices
+            LocalTime showTime = Pricing.showTime(booked.showTime);
+            double multiplier = quote != null ? quote.multiplier()
+                : ShowDemand.observeIfAbsent(showId, booked.screenNo, booked.showTime, availableSeats).multiplier();
+            try (PreparedStatement ticketStmt = conn.prepareStatement(Sql.INSERT_TICKET)) {
+                for (SeatAllocator.Seat seat : seats) {
+                    double price = Pricing.price(booked.screenNo, showTime, seat.row, multiplier);
+                    booked.prices.put(seat.row * 100 + seat.seat, price);
+                    ticketStmt.setInt(1, seat.seat);
+                    ticketStmt.setInt(2, seat.row);
+                    ticketStmt.setInt(3, booked.screenNo);
+                    ticketStmt.setInt(4, booked.reservationId);
+                    ticketStmt.setDouble(5, price);
+                    ticketStmt.setInt(6, showId);
+                    ticketStmt.addBatch();
                 }
+                ticketStmt.executeBatch();
+            }
+            
+            // Take the seats off the show last, so its row lock is held only until the commit
+            ShowCapacity.take(conn, showId, numSeats);
+            return booked;
+        }
+    }
+    
+    static class SeatHoldHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            
+            if ("OPTIONS".equals(method)) {
+                handleCors(exchange);
+                return;
+            }
+            
+            try {
+                if ("POST".equals(method)) {
+                    handleCreateHold(exchange);
+                } else if ("DELETE".equals(method)) {
+                    handleReleaseHold(exchange);
+                } else {
+                    sendJsonResponse(exchange, "{\"error\": \"Method not allowed\"}", 405);
+                }
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
+            } catch (Exception e) {
+                LOG.error("Seat hold request failed", e);
+                sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
+            }
+        }
+        
+        private void handleCreateHold(HttpExchange exchange) throws IOException, SQLException {
+            Requests.Hold request = Requests.Hold.read(exchange);
+            int showId = request.showId;
+            int numSeats = request.seats;
+            boolean adjacent = request.adjacent;
+            
+            if (numSeats < 1 || numSeats > SeatAllocator.SEATS_PER_ROW) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid number of seats\"}", 400);
+                return;
+            }
+            if (SeatMap.forShow(showId) == null) {
+                sendJsonResponse(exchange, "{\"error\": \"Show timing not found\"}", 404);
+                return;
+            }
+            
+            // Held seats live only in memory until the booking is confirmed
+            SeatHolds.Hold hold = SeatHolds.create(showId, numSeats, adjacent, SeatHolds.DEFAULT_TTL_MILLIS);
+            if (hold == null) {
+                sendJsonResponse(exchange, "{\"error\": \"" + (adjacent
+                    ? "No block of " + numSeats + " adjacent seats available"
+                    : "Not enough seats available") + "\"}", 409);
+                return;
+            }
+            
+            try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                out.beginObject()
+                    .field("success", true)
+                    .field("holdId", hold.id)
+                    .field("showId", hold.showId)
+                    .field("expiresAt", java.time.Instant.ofEpochMilli(hold.expiresAt).toString())
+                    .name("seats").beginArray();
+                for (SeatAllocator.Seat seat : hold.seats) {
+                    out.beginObject()
+                        .field("rowNo", seat.row)
+                        .field("seatNo", seat.seat)
+                        .endObject();
+                }
+                out.endArray().endObject();
+            }
+        }
+        
+        private void handleReleaseHold(HttpExchange exchange) throws IOException {
+            String query = exchange.getRequestURI().getQuery();
+            if (query == null || !query.startsWith("holdId=")) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid request\"}", 400);
+                return;
+            }
+            
+            if (SeatHolds.release(query.substring(7))) {
+                sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Seat hold released\"}", 200);
+            } else {
+                sendJsonResponse(exchange, "{\"error\": \"Seat hold has expired or does not exist\"}", 404);
             }
         }
     }
@@ -449,67 +631,63 @@ public class SimpleServer {
                 return;
             }
             
+            String cacheKey = "/api/snacks";
+            if (sendCachedJson(exchange, cacheKey)) {
+                return;
+            }
+            long cacheGeneration = CATALOG_CACHE.generation(cacheKey);
+            
             try {
-                Connection conn = DatabaseConnection.getConnection();
-                
-                // First identify the top 3 most ordered snacks
-                Set<Integer> trendingSnackIds = new HashSet<>();
-                PreparedStatement trendingStmt = conn.prepareStatement(
-                    "SELECT s.SnackID FROM snackscounter s " +
-                    "JOIN snackorders so ON s.SnackID = so.SnackID " +
-                    "GROUP BY s.SnackID " +
-                    "ORDER BY SUM(so.Quantity) DESC LIMIT 3"
-                );
-                ResultSet trendingRs = trendingStmt.executeQuery();
-                while (trendingRs.next()) {
-                    trendingSnackIds.add(trendingRs.getInt("SnackID"));
-                }
-                trendingRs.close();
-                trendingStmt.close();
-                
-                // Then get all available snacks
-                PreparedStatement stmt = conn.prepareStatement("SELECT * FROM snackscounter WHERE Quantity > 0");
-                ResultSet rs = stmt.executeQuery();
-                
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("[");
-                boolean first = true;
-                
-                while (rs.next()) {
-                    int snackId = rs.getInt("SnackID");
-                    int quantity = rs.getInt("Quantity");
-                    boolean lowStock = quantity < 10; // Flag items with less than 10 in stock as low
-                    boolean isTrending = trendingSnackIds.contains(snackId);
-                    
-                    if (!first) {
-                        jsonBuilder.append(",");
+                // Top 3 most ordered snacks, kept up to date in memory
+                Set<Integer> trendingSnackIds = new HashSet<>(Trending.topSnacks(3));
+                
+                // Then get all available snacks; stock comes from the in-memory inventory
+                List<SnackInventory.Item> snacks = SnackInventory.all();
+                
+                byte[] response = JsonWriter.toBytes(json -> {
+                    json.beginArray();
+                    for (SnackInventory.Item snack : snacks) {
+                        int quantity = snack.available();
+                        if (quantity <= 0) {
+                            continue;
+                        }
+                        json.beginObject()
+                            .field("id", snack.id)
+                            .field("itemName", snack.itemName)
+                            .field("price", snack.price)
+                            .field("quantity", quantity)
+                            .field("lowStock", quantity < 10) // Flag items with less than 10 in stock as low
+                            .field("trending", trendingSnackIds.contains(snack.id))
+                            .endObject();
                     }
-                    jsonBuilder.append("{")
-                        .append("\"id\":").append(snackId).append(",")
-                        .append("\"itemName\":\"").append(SimpleServer.escapeJson(rs.getString("ItemName"))).append("\",")
-                        .append("\"price\":").append(rs.getDouble("Price")).append(",")
-                        .append("\"quantity\":").append(quantity).append(",")
-                        .append("\"lowStock\":").append(lowStock).append(",")
-                        .append("\"trending\":").append(isTrending)
-                        .append("}");
-                    first = false;
-                }
-                jsonBuilder.append("]");
-                
-                SimpleServer.sendJsonResponse(exchange, jsonBuilder.toString(), 200);
-                
-                rs.close();
-                stmt.close();
-                conn.close();
+                    json.endArray();
+                });
+                SimpleServer.sendJsonEntry(exchange, CATALOG_CACHE.put(cacheKey, response, cacheGeneration));
                 
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Loading snacks failed", e);
                 SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
             }
         }
     }
     
     static class SnackOrderHandler implements HttpHandler {
+        private static final class OrderLine {
+            final int snackId;
+            final String itemName;
+            final int quantity;
+            final double price;
+            final int remainingStock;
+            
+            OrderLine(int snackId, String itemName, int quantity, double price, int remainingStock) {
+                this.snackId = snackId;
+                this.itemName = itemName;
+                this.quantity = quantity;
+                this.price = price;
+                this.remainingStock = remainingStock;
+            }
+        }
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equals("POST")) {
@@ -517,121 +695,123 @@ public class SimpleServer {
                 return;
             }
             
-            Connection conn = null;
+            Map<Integer, Integer> reserved = null;
             try {
-                String json = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                int reservationId = Integer.parseInt(SimpleServer.extractJsonValue(json, "reservationId"));
-                String ordersJson = json.substring(json.indexOf("\"orders\":[") + 9, json.lastIndexOf("]"));
+                Requests.SnackOrder request = Requests.SnackOrder.read(exchange);
+                int reservationId = request.reservationId;
                 
-                conn = DatabaseConnection.getConnection();
-                conn.setAutoCommit(false);
+                // Checked up front; once logged, an order for no reservation could only be dropped
+                if (!reservationExists(reservationId)) {
+                    SimpleServer.sendJsonResponse(exchange, "{\"error\": \"Reservation not found\"}", 404);
+                    return;
+                }
                 
-                // Get any available employee for snack service
-                System.out.println("Looking for available employee...");
-                PreparedStatement empStmt = conn.prepareStatement(
-                    "SELECT EmployeeID, Name FROM employees ORDER BY RAND() LIMIT 1"
-                );
-                ResultSet empRs = empStmt.executeQuery();
-                System.out.println("Employee query executed.");
-                if (!empRs.next()) {
-                    System.out.println("No employees found in database.");
+                // Next employee in turn serves the order
+                EmployeeRoster.Employee employee = EmployeeRoster.next();
+                if (employee == null) {
+                    LOG.warn("No employees found in database");
                     throw new SQLException("No employee available");
                 }
-                int employeeId = empRs.getInt("EmployeeID");
-                String employeeName = empRs.getString("Name");
-                System.out.println("Found employee ID: " + employeeId + ", Name: " + employeeName);
+                int employeeId = employee.id;
+                String employeeName = employee.name;
                 
-                // Process each snack order
-                StringBuilder orderSummary = new StringBuilder();
-                orderSummary.append("[");
-                boolean firstOrder = true;
-
-                String[] orders = ordersJson.split("\\},\\{");
-                for (String order : orders) {
-                    int snackId = Integer.parseInt(SimpleServer.extractJsonValue(order, "snackId"));
-                    int quantity = Integer.parseInt(SimpleServer.extractJsonValue(order, "quantity"));
-                    
-                    // Check stock availability
-                    PreparedStatement checkStmt = conn.prepareStatement(
-                        "SELECT ItemName, Quantity, Price FROM snackscounter WHERE SnackID = ?"
-                    );
-                    checkStmt.setInt(1, snackId);
-                    ResultSet checkRs = checkStmt.executeQuery();
-                    
-                    if (!checkRs.next() || checkRs.getInt("Quantity") < quantity) {
-                        throw new SQLException("Insufficient stock for snack ID: " + snackId + 
-                                              " (Requested: " + quantity + ", Available: " + 
-                                              (checkRs.next() ? checkRs.getInt("Quantity") : 0) + ")");
-                    }
-                    
-                    String itemName = checkRs.getString("ItemName");
-                    double price = checkRs.getDouble("Price");
-                    int availableQuantity = checkRs.getInt("Quantity");
-                    int remainingQuantity = availableQuantity - quantity;
-                    
-                    // Update stock
-                    PreparedStatement updateStmt = conn.prepareStatement(
-                        "UPDATE snackscounter SET Quantity = Quantity - ? WHERE SnackID = ?"
-                    );
-                    updateStmt.setInt(1, quantity);
-                    updateStmt.setInt(2, snackId);
-                    updateStmt.executeUpdate();
-                    
-                    // Create order
-                    PreparedStatement orderStmt = conn.prepareStatement(
-                        "INSERT INTO snackorders (ReservationID, SnackID, Quantity, EmployeeID) VALUES (?, ?, ?, ?)"
-                    );
-                    orderStmt.setInt(1, reservationId);
-                    orderStmt.setInt(2, snackId);
-                    orderStmt.setInt(3, quantity);
-                    orderStmt.setInt(4, employeeId);
-                    orderStmt.executeUpdate();
-                    
-                    // Add order details to response
-                    if (!firstOrder) {
-                        orderSummary.append(",");
+                // Total quantity per snack, so repeated lines are checked together
+                Map<Integer, Integer> orderedQuantities = new TreeMap<>();
+                for (Requests.SnackOrderLine order : request.orders) {
+                    orderedQuantities.merge(order.snackId, order.quantity, Integer::sum);
+                }
+                
+                // Take the stock in memory first; from here it must be logged or given back
+                Map<Integer, SnackInventory.Item> stock = SnackInventory.reserve(orderedQuantities);
+                reserved = orderedQuantities;
+                
+                List<OrderLine> orderLines = new ArrayList<>();
+                Map<Integer, Integer> remaining = new HashMap<>();
+                for (Requests.SnackOrderLine order : request.orders) {
+                    SnackInventory.Item snack = stock.get(order.snackId);
+                    // Stock left once this order's earlier lines are counted
+                    int remainingQuantity = remaining.getOrDefault(order.snackId,
+                        snack.available() + orderedQuantities.get(order.snackId)) - order.quantity;
+                    remaining.put(order.snackId, remainingQuantity);
+                    orderLines.add(new OrderLine(order.snackId, snack.itemName, order.quantity, snack.price, remainingQuantity));
+                }
+                
+                // Durable once logged; the order rows and stock journal are written in the background
+                BookingLedger.snackOrder(reservationId, employeeId, request.orders);
+                reserved = null;
+                orderedQuantities.forEach(Trending::snackOrdered);
+                CATALOG_CACHE.invalidate("/api/snacks");
+                try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                    out.beginObject()
+                        .field("success", true)
+                        .field("message", "Snacks ordered successfully")
+                        .name("orders").beginArray();
+                    for (OrderLine line : orderLines) {
+                        out.beginObject()
+                            .field("snackId", line.snackId)
+                            .field("itemName", line.itemName)
+                            .field("quantity", line.quantity)
+                            .field("price", line.price)
+                            .field("total", line.price * line.quantity)
+                            .field("remainingStock", line.remainingStock)
+                            .field("lowStock", line.remainingStock < 10)
+                            .endObject();
                     }
-                    orderSummary.append("{")
-                        .append("\"snackId\":").append(snackId).append(",")
-                        .append("\"itemName\":\"").append(SimpleServer.escapeJson(itemName)).append("\",")
-                        .append("\"quantity\":").append(quantity).append(",")
-                        .append("\"price\":").append(price).append(",")
-                        .append("\"total\":").append(price * quantity).append(",")
-                        .append("\"remainingStock\":").append(remainingQuantity).append(",")
-                        .append("\"lowStock\":").append(remainingQuantity < 10)
-                        .append("}");
-                    firstOrder = false;
+                    out.endArray()
+                        .field("employeeName", employeeName)
+                        .endObject();
                 }
-                orderSummary.append("]");
-
-                conn.commit();
-                SimpleServer.sendJsonResponse(exchange, 
-                    "{\"success\": true, \"message\": \"Snacks ordered successfully\", \"orders\": " + 
-                    orderSummary.toString() + ", \"employeeName\": \"" + SimpleServer.escapeJson(employeeName) + "\"}", 200);
                 
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
+                LOG.error("Snack order failed", e);
+                // Nothing was logged, so the reserved stock goes back
+                if (reserved != null) {
+                    SnackInventory.release(reserved);
                 }
                 SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.close();
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
+            }
+        }
+        
+        private static boolean reservationExists(int reservationId) throws SQLException {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(Sql.RESERVATION_EXISTS)) {
+                stmt.setInt(1, reservationId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
                 }
             }
         }
     }
     
     static class BookingConfirmHandler implements HttpHandler {
+        private static final class TicketLine {
+            final int rowNo;
+            final int seatNo;
+            final int screenNo;
+            final double price;
+            
+            TicketLine(int rowNo, int seatNo, int screenNo, double price) {
+                this.rowNo = rowNo;
+                this.seatNo = seatNo;
+                this.screenNo = screenNo;
+                this.price = price;
+            }
+        }
+        
+        private static final class SnackLine {
+            final String itemName;
+            final int quantity;
+            final double price;
+            
+            SnackLine(String itemName, int quantity, double price) {
+                this.itemName = itemName;
+                this.quantity = quantity;
+                this.price = price;
+            }
+        }
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equals("POST")) {
@@ -641,126 +821,98 @@ public class SimpleServer {
             
             Connection conn = null;
             try {
-                String json = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                int reservationId = Integer.parseInt(SimpleServer.extractJsonValue(json, "reservationId"));
+                int reservationId = Requests.Reservation.read(exchange).reservationId;
+                
+                // Snack orders still in the ledger must be saved before they can be read back
+                BookingLedger.awaitReservation(reservationId);
+                
+                // Confirm the booking; the status update is written in the background
+                BookingLedger.confirm(reservationId);
                 
                 conn = DatabaseConnection.getConnection();
                 conn.setAutoCommit(false);
                 
-                // Confirm the booking by marking it as confirmed in the database
-                PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE reservation SET Status = 'Confirmed' WHERE ReservationID = ?"
-                );
-                stmt.setInt(1, reservationId);
-                stmt.executeUpdate();
-                
                 // Get complete ticket information
-                PreparedStatement ticketStmt = conn.prepareStatement(
-                    "SELECT DISTINCT t.*, m.Title as MovieTitle, st.ShowTime, st.ShowDate, st.ScreenNo, " +
-                    "e.Name as EmployeeName " +
-                    "FROM tickets t " +
-                    "JOIN show_timings st ON t.ShowID = st.ShowID " +
-                    "JOIN movie m ON st.MovieID = m.MovieID " +
-                    "LEFT JOIN (SELECT DISTINCT ReservationID, EmployeeID FROM snackorders) so ON t.ReservationID = so.ReservationID " +
-                    "LEFT JOIN employees e ON so.EmployeeID = e.EmployeeID " +
-                    "WHERE t.ReservationID = ?"
-                );
-                ticketStmt.setInt(1, reservationId);
-                ResultSet rs = ticketStmt.executeQuery();
-                
-                StringBuilder ticketsJson = new StringBuilder();
-                ticketsJson.append("[");
-                boolean first = true;
+                List<TicketLine> tickets = new ArrayList<>();
                 String movieTitle = "";
                 String showTime = "";
                 String showDate = "";
                 int screenNo = 0;
                 String employeeName = null;
                 
-                while (rs.next()) {
-                    if (!first) {
-                        ticketsJson.append(",");
-                    }
-                    movieTitle = rs.getString("MovieTitle");
-                    showTime = rs.getString("ShowTime");
-                    showDate = rs.getString("ShowDate");
-                    screenNo = rs.getInt("ScreenNo");
-                    if (employeeName == null) {
-                        employeeName = rs.getString("EmployeeName");
+                try (PreparedStatement ticketStmt = conn.prepareStatement(Sql.RESERVATION_TICKETS)) {
+                    ticketStmt.setInt(1, reservationId);
+                    try (ResultSet rs = ticketStmt.executeQuery()) {
+                        while (rs.next()) {
+                            movieTitle = rs.getString("MovieTitle");
+                            showTime = rs.getString("ShowTime");
+                            showDate = rs.getString("ShowDate");
+                            screenNo = rs.getInt("ScreenNo");
+                            if (employeeName == null) {
+                                employeeName = rs.getString("EmployeeName");
+                            }
+                            
+                            tickets.add(new TicketLine(rs.getInt("RowNo"), rs.getInt("SeatNo"), rs.getInt("ScreenNo"), rs.getDouble("Price")));
+                        }
                     }
-                    
-                    ticketsJson.append("{")
-                        .append("\"rowNo\":").append(rs.getInt("RowNo")).append(",")
-                        .append("\"seatNo\":").append(rs.getInt("SeatNo")).append(",")
-                        .append("\"screenNo\":").append(rs.getInt("ScreenNo")).append(",")
-                        .append("\"price\":").append(rs.getDouble("Price"))
-                        .append("}");
-                    first = false;
                 }
-                ticketsJson.append("]");
                 
                 // Get snack orders if any
-                PreparedStatement snackStmt = conn.prepareStatement(
-                    "SELECT s.ItemName, so.Quantity, s.Price " +
-                    "FROM snackorders so " +
-                    "JOIN snackscounter s ON so.SnackID = s.SnackID " +
-                    "WHERE so.ReservationID = ?"
-                );
-                snackStmt.setInt(1, reservationId);
-                ResultSet snackRs = snackStmt.executeQuery();
-                
-                StringBuilder snacksJson = new StringBuilder();
-                snacksJson.append("[");
-                first = true;
-                
-                while (snackRs.next()) {
-                    if (!first) {
-                        snacksJson.append(",");
+                List<SnackLine> snacks = new ArrayList<>();
+                try (PreparedStatement snackStmt = conn.prepareStatement(Sql.RESERVATION_SNACKS)) {
+                    snackStmt.setInt(1, reservationId);
+                    try (ResultSet snackRs = snackStmt.executeQuery()) {
+                        while (snackRs.next()) {
+                            snacks.add(new SnackLine(snackRs.getString("ItemName"), snackRs.getInt("Quantity"), snackRs.getDouble("Price")));
+                        }
                     }
-                    snacksJson.append("{")
-                        .append("\"itemName\":\"").append(escapeJson(snackRs.getString("ItemName"))).append("\",")
-                        .append("\"quantity\":").append(snackRs.getInt("Quantity")).append(",")
-                        .append("\"price\":").append(snackRs.getDouble("Price"))
-                        .append("}");
-                    first = false;
                 }
-                snacksJson.append("]");
                 
                 conn.commit();
                 
-                String response = String.format(
-                    "{\"success\":true," +
-                    "\"message\":\"Booking confirmed successfully\"," +
-                    "\"ticket\":{" +
-                    "\"reservationId\":%d," +
-                    "\"movieTitle\":\"%s\"," +
-                    "\"showTime\":\"%s\"," +
-                    "\"showDate\":\"%s\"," +
-                    "\"screenNo\":%d," +
-                    "\"status\":\"Confirmed\"," +
-                    "\"tickets\":%s," +
-                    "\"snacks\":%s," +
-                    "\"employeeName\":\"%s\"" +
-                    "}}",
-                    reservationId,
-                    escapeJson(movieTitle),
-                    escapeJson(showTime),
-                    escapeJson(showDate),
-                    screenNo,
-                    ticketsJson.toString(),
-                    snacksJson.toString(),
-                    employeeName != null ? escapeJson(employeeName) : ""
-                );
-                
-                SimpleServer.sendJsonResponse(exchange, response, 200);
+                try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                    out.beginObject()
+                        .field("success", true)
+                        .field("message", "Booking confirmed successfully")
+                        .name("ticket").beginObject()
+                            .field("reservationId", reservationId)
+                            .field("movieTitle", movieTitle)
+                            .field("showTime", showTime)
+                            .field("showDate", showDate)
+                            .field("screenNo", screenNo)
+                            .field("status", "Confirmed")
+                            .name("tickets").beginArray();
+                    for (TicketLine ticket : tickets) {
+                        out.beginObject()
+                            .field("rowNo", ticket.rowNo)
+                            .field("seatNo", ticket.seatNo)
+                            .field("screenNo", ticket.screenNo)
+                            .field("price", ticket.price)
+                            .endObject();
+                    }
+                    out.endArray().name("snacks").beginArray();
+                    for (SnackLine snack : snacks) {
+                        out.beginObject()
+                            .field("itemName", snack.itemName)
+                            .field("quantity", snack.quantity)
+                            .field("price", snack.price)
+                            .endObject();
+                    }
+                    out.endArray()
+                            .field("employeeName", employeeName != null ? employeeName : "")
+                        .endObject()
+                        .endObject();
+                }
                 
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Booking confirmation failed", e);
                 if (conn != null) {
                     try {
                         conn.rollback();
                     } catch (SQLException ex) {
-                        ex.printStackTrace();
+                        LOG.warn("Rollback failed", ex);
                     }
                 }
                 SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
@@ -769,7 +921,7 @@ public class SimpleServer {
                     try {
                         conn.close();
                     } catch (SQLException e) {
-                        e.printStackTrace();
+                        LOG.warn("Could not return connection to the pool", e);
                     }
                 }
             }
@@ -784,97 +936,103 @@ public class SimpleServer {
                 return;
             }
             
-            Connection conn = null;
             try {
-                String json = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                int reservationId = Integer.parseInt(SimpleServer.extractJsonValue(json, "reservationId"));
-                
-                conn = DatabaseConnection.getConnection();
-                conn.setAutoCommit(false);
+                int reservationId = Requests.Reservation.read(exchange).reservationId;
                 
-                // Get reservation details to find the show timing
-                PreparedStatement reservationStmt = conn.prepareStatement(
-                    "SELECT COUNT(t.TicketID) as TicketCount, t.ShowID " +
-                    "FROM tickets t " +
-                    "WHERE t.ReservationID = ? " +
-                    "GROUP BY t.ShowID"
-                );
-                reservationStmt.setInt(1, reservationId);
-                ResultSet reservationRs = reservationStmt.executeQuery();
-                
-                if (reservationRs.next()) {
-                    int ticketCount = reservationRs.getInt("TicketCount");
-                    int showId = reservationRs.getInt("ShowID");
-                    
-                    // Update available seats in the show_timings table
-                    PreparedStatement updateSeatsStmt = conn.prepareStatement(
-                        "UPDATE show_timings SET AvailableSeats = AvailableSeats + ? " +
-                        "WHERE ShowID = ?"
-                    );
-                    updateSeatsStmt.setInt(1, ticketCount);
-                    updateSeatsStmt.setInt(2, showId);
-                    int updatedRows = updateSeatsStmt.executeUpdate();
-                    
-                    System.out.println("Updated show_timings with ID " + showId + ": " +
-                                      "restored " + ticketCount + " seats, affected " + updatedRows + " rows");
+                // Same set-based transaction as a bulk cancellation, with a chunk of one
+                BulkCancellation.Result result = BulkCancellation.cancel(Collections.singletonList(reservationId));
+                if (result.tickets > 0) {
+                    LOG.debug("Cancelled reservation {}: restored {} seats", reservationId, result.tickets);
                 } else {
-                    System.out.println("Warning: No tickets found for reservation ID " + reservationId);
+                    LOG.warn("No tickets found for reservation ID {}", reservationId);
                 }
-                
-                // First, restore snack quantities
-                PreparedStatement snackStmt = conn.prepareStatement(
-                    "UPDATE snackscounter sc " +
-                    "INNER JOIN snackorders so ON sc.SnackID = so.SnackID " +
-                    "SET sc.Quantity = sc.Quantity + so.Quantity " +
-                    "WHERE so.ReservationID = ?"
-                );
-                snackStmt.setInt(1, reservationId);
-                snackStmt.executeUpdate();
-                
-                // Delete snack orders
-                PreparedStatement deleteSnackStmt = conn.prepareStatement(
-                    "DELETE FROM snackorders WHERE ReservationID = ?"
-                );
-                deleteSnackStmt.setInt(1, reservationId);
-                deleteSnackStmt.executeUpdate();
-                
-                // Delete tickets
-                PreparedStatement deleteTicketStmt = conn.prepareStatement(
-                    "DELETE FROM tickets WHERE ReservationID = ?"
-                );
-                deleteTicketStmt.setInt(1, reservationId);
-                deleteTicketStmt.executeUpdate();
-                
-                // Delete reservation
-                PreparedStatement deleteReservationStmt = conn.prepareStatement(
-                    "DELETE FROM reservation WHERE ReservationID = ?"
-                );
-                deleteReservationStmt.setInt(1, reservationId);
-                deleteReservationStmt.executeUpdate();
-                
-                conn.commit();
+                invalidateAfterCancel(result);
                 SimpleServer.sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Booking cancelled successfully\"}", 200);
                 
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
-                }
+                LOG.error("Booking cancellation failed", e);
                 SimpleServer.sendJsonResponse(exchange, "{\"error\": \"" + SimpleServer.escapeJson(e.getMessage()) + "\"}", 500);
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.close();
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
+            }
+        }
+    }
+    
+    static class BulkCancelHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            try {
+                if ("POST".equals(method)) {
+                    handleSubmit(exchange);
+                } else if ("GET".equals(method)) {
+                    handleStatus(exchange);
+                } else {
+                    exchange.sendResponseHeaders(405, -1);
                 }
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
+            } catch (Exception e) {
+                LOG.error("Bulk cancellation request failed", e);
+                sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
             }
         }
+        
+        private void handleSubmit(HttpExchange exchange) throws IOException {
+            Requests.BulkCancel request = Requests.BulkCancel.read(exchange);
+            // Runs in the background; poll GET /api/booking/cancel/bulk?jobId=... for progress
+            BulkCancellation.Job job = BulkCancellation.submit(request.reservationIds, request.showId,
+                SimpleServer::invalidateAfterCancel);
+            sendJob(exchange, job, 202);
+        }
+        
+        private void handleStatus(HttpExchange exchange) throws IOException {
+            String query = exchange.getRequestURI().getQuery();
+            if (query == null || !query.startsWith("jobId=")) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid request\"}", 400);
+                return;
+            }
+            
+            BulkCancellation.Job job = BulkCancellation.get(query.substring(6));
+            if (job == null) {
+                sendJsonResponse(exchange, "{\"error\": \"Cancellation job does not exist\"}", 404);
+                return;
+            }
+            sendJob(exchange, job, 200);
+        }
+        
+        private void sendJob(HttpExchange exchange, BulkCancellation.Job job, int status) throws IOException {
+            try (JsonWriter out = JsonWriter.forResponse(exchange, status)) {
+                out.beginObject()
+                    .field("jobId", job.id)
+                    .field("status", job.status);
+                if (job.showId > 0) {
+                    out.field("showId", job.showId);
+                }
+                out.field("total", job.total)
+                    .field("processed", job.processed)
+                    .field("cancelled", job.cancelled)
+                    .field("seatsRestored", job.seatsRestored)
+                    .field("startedAt", java.time.Instant.ofEpochMilli(job.createdAt).toString());
+                if (job.finished()) {
+                    out.field("finishedAt", java.time.Instant.ofEpochMilli(job.finishedAt).toString());
+                }
+                if (job.error != null) {
+                    out.field("error", job.error);
+                }
+                out.endObject();
+            }
+        }
+    }
+    
+    // Cancelled seats and snacks show up in these listings
+    private static void invalidateAfterCancel(BulkCancellation.Result result) {
+        for (int movieId : result.movies) {
+            CATALOG_CACHE.invalidateKey(showTimingsKey(movieId));
+        }
+        CATALOG_CACHE.invalidate("/api/movies");
+        CATALOG_CACHE.invalidate("/api/snacks");
+        Catalog.refreshSoon();
     }
     
     static class LoginHandler implements HttpHandler {
@@ -891,15 +1049,12 @@ public class SimpleServer {
             }
 
             try {
-                String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                
-                // Parse JSON manually
-                String email = extractJsonValue(requestBody, "email");
-                String password = extractJsonValue(requestBody, "password");
+                Requests.Login request = Requests.Login.read(exchange);
+                String email = request.email;
+                String password = request.password;
 
-                try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-                    String sql = "SELECT * FROM customer WHERE Email = ? AND Password = ?";
-                    PreparedStatement stmt = conn.prepareStatement(sql);
+                try (Connection conn = DatabaseConnection.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(Sql.LOGIN)) {
                     stmt.setString(1, email);
                     stmt.setString(2, password);
                     
@@ -920,8 +1075,10 @@ public class SimpleServer {
                         sendJsonResponse(exchange, response, 401);
                     }
                 }
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Login failed", e);
                 String response = "{\"success\":false,\"error\":\"Error during login: " + escapeJson(e.getMessage()) + "\"}";
                 sendJsonResponse(exchange, response, 500);
             }
@@ -942,65 +1099,68 @@ public class SimpleServer {
             }
 
             try {
-                String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                
-                // Parse JSON manually
-                String name = extractJsonValue(requestBody, "name");
-                String email = extractJsonValue(requestBody, "email");
-                String password = extractJsonValue(requestBody, "password");
-                int age = Integer.parseInt(extractJsonValue(requestBody, "age"));
-                String gender = extractJsonValue(requestBody, "gender");
+                Requests.Signup request = Requests.Signup.read(exchange);
+                String name = request.name;
+                String email = request.email;
+                String password = request.password;
+                int age = request.age;
+                String gender = request.gender;
 
-                try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
+                try (Connection conn = DatabaseConnection.getConnection()) {
                     // Check if email already exists
-                    String checkSql = "SELECT COUNT(*) FROM customer WHERE Email = ?";
-                    PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                    checkStmt.setString(1, email);
-                    ResultSet checkRs = checkStmt.executeQuery();
-                    checkRs.next();
+                    boolean emailTaken;
+                    try (PreparedStatement checkStmt = conn.prepareStatement(Sql.EMAIL_COUNT)) {
+                        checkStmt.setString(1, email);
+                        try (ResultSet checkRs = checkStmt.executeQuery()) {
+                            checkRs.next();
+                            emailTaken = checkRs.getInt(1) > 0;
+                        }
+                    }
                     
-                    if (checkRs.getInt(1) > 0) {
+                    if (emailTaken) {
                         String response = "{\"success\":false,\"error\":\"Email already exists\"}";
                         sendJsonResponse(exchange, response, 400);
                         return;
                     }
                     
                     // Insert new user
-                    String insertSql = "INSERT INTO customer (Name, Age, Gender, Email, Password) VALUES (?, ?, ?, ?, ?)";
-                    PreparedStatement insertStmt = conn.prepareStatement(insertSql, PreparedStatement.RETURN_GENERATED_KEYS);
-                    insertStmt.setString(1, name);
-                    insertStmt.setInt(2, age);
-                    insertStmt.setString(3, gender);
-                    insertStmt.setString(4, email);
-                    insertStmt.setString(5, password);
+                    try (PreparedStatement insertStmt = conn.prepareStatement(Sql.INSERT_ACCOUNT, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                        insertStmt.setString(1, name);
+                        insertStmt.setInt(2, age);
+                        insertStmt.setString(3, gender);
+                        insertStmt.setString(4, email);
+                        insertStmt.setString(5, password);
                     
-                    int affectedRows = insertStmt.executeUpdate();
+                        int affectedRows = insertStmt.executeUpdate();
                     
-                    if (affectedRows > 0) {
-                        ResultSet generatedKeys = insertStmt.getGeneratedKeys();
-                        if (generatedKeys.next()) {
-                            int userId = generatedKeys.getInt(1);
+                        if (affectedRows > 0) {
+                            ResultSet generatedKeys = insertStmt.getGeneratedKeys();
+                            if (generatedKeys.next()) {
+                                int userId = generatedKeys.getInt(1);
                             
-                            // Create JSON response manually
-                            String response = "{\"success\":true,\"user\":{" +
-                                "\"id\":" + userId + "," +
-                                "\"name\":\"" + escapeJson(name) + "\"," +
-                                "\"age\":" + age + "," +
-                                "\"gender\":\"" + escapeJson(gender) + "\"," +
-                                "\"email\":\"" + escapeJson(email) + "\"" +
-                                "}}";
-                            sendJsonResponse(exchange, response);
+                                // Create JSON response manually
+                                String response = "{\"success\":true,\"user\":{" +
+                                    "\"id\":" + userId + "," +
+                                    "\"name\":\"" + escapeJson(name) + "\"," +
+                                    "\"age\":" + age + "," +
+                                    "\"gender\":\"" + escapeJson(gender) + "\"," +
+                                    "\"email\":\"" + escapeJson(email) + "\"" +
+                                    "}}";
+                                sendJsonResponse(exchange, response);
+                            } else {
+                                String response = "{\"success\":false,\"error\":\"Failed to create user\"}";
+                                sendJsonResponse(exchange, response, 500);
+                            }
                         } else {
                             String response = "{\"success\":false,\"error\":\"Failed to create user\"}";
                             sendJsonResponse(exchange, response, 500);
                         }
-                    } else {
-                        String response = "{\"success\":false,\"error\":\"Failed to create user\"}";
-                        sendJsonResponse(exchange, response, 500);
                     }
                 }
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Signup failed", e);
                 String response = "{\"success\":false,\"error\":\"Error during signup: " + escapeJson(e.getMessage()) + "\"}";
                 sendJsonResponse(exchange, response, 500);
             }
@@ -1015,71 +1175,150 @@ public class SimpleServer {
                 return;
             }
 
-            String query = exchange.getRequestURI().getQuery();
-            if (query == null || !query.startsWith("movieId=")) {
+            String query = exchange.getRequestURI().getRawQuery();
+            Map<String, String> params;
+            try {
+                params = query != null ? queryParams(query) : Collections.emptyMap();
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid query string\"}", 400);
+                return;
+            }
+            // A paging or filter parameter asks for a page from the index; a movieId alone keeps the full cached list
+            if (!Collections.disjoint(params.keySet(), Catalog.ShowQuery.PARAMS)) {
+                sendShowPage(exchange, params);
+                return;
+            }
+            if (!params.containsKey("movieId")) {
                 sendJsonResponse(exchange, "{\"error\": \"Invalid request\"}", 400);
                 return;
             }
 
             int movieId;
             try {
-                movieId = Integer.parseInt(query.substring(8));
-                System.out.println("Fetching show timings for movie ID: " + movieId);
+                movieId = Integer.parseInt(params.get("movieId"));
             } catch (NumberFormatException e) {
                 sendJsonResponse(exchange, "{\"error\": \"Invalid movie ID\"}", 400);
                 return;
             }
 
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 PreparedStatement stmt = conn.prepareStatement(GET_SHOW_TIMINGS)) {
+            String cacheKey = showTimingsKey(movieId);
+            if (sendCachedJson(exchange, cacheKey)) {
+                return;
+            }
+            long cacheGeneration = CATALOG_CACHE.generation(cacheKey);
+            
+            try {
+                // A burst of misses for the same movie runs the query once
+                ResponseCache.Entry entry = CATALOG_LOADS.run(cacheKey + "#" + cacheGeneration,
+                    () -> CATALOG_CACHE.put(cacheKey, loadShowTimings(movieId), cacheGeneration));
+                sendJsonEntry(exchange, entry);
+            } catch (Exception e) {
+                LOG.error("Loading show timings for movie {} failed", movieId, e);
+                sendJsonResponse(exchange, "{\"error\": \"Database error: " + escapeJson(e.getMessage()) + "\"}", 500);
+            }
+        }
+        
+        private static byte[] loadShowTimings(int movieId) throws Exception {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(Sql.SHOW_TIMINGS)) {
                 
                 stmt.setInt(1, movieId);
-                System.out.println("Executing query: " + GET_SHOW_TIMINGS + " with movieId=" + movieId);
                 ResultSet rs = stmt.executeQuery();
                 
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("{\"showTimings\": [");
-                boolean first = true;
-                
-                while (rs.next()) {
-                    int showId = rs.getInt("ShowID");
-                    String showTime = rs.getString("ShowTime");
-                    String showDate = rs.getString("ShowDate");
-                    int screenNo = rs.getInt("ScreenNo");
-                    int availableSeats = rs.getInt("AvailableSeats");
-                    String movieName = rs.getString("MovieName");
-                    
-                    System.out.println("Found show: ID=" + showId + ", Movie=" + movieName + 
-                                     ", Time=" + showTime + ", Date=" + showDate + 
-                                     ", Screen=" + screenNo + ", Available Seats=" + availableSeats);
-                    
-                    if (!first) {
-                        jsonBuilder.append(",");
+                return JsonWriter.toBytes(json -> {
+                    json.beginObject().name("showTimings").beginArray();
+                    while (rs.next()) {
+                        int showId = rs.getInt("ShowID");
+                        // Free resync of the demand counters with the database
+                        ShowDemand.Show demand = ShowDemand.observe(showId, rs.getInt("ScreenNo"),
+                            rs.getString("ShowTime"), rs.getInt("AvailableSeats"));
+                        double multiplier = demand.multiplier();
+                        json.beginObject()
+                            .field("showId", showId)
+                            .field("showTime", rs.getString("ShowTime"))
+                            .field("showDate", rs.getString("ShowDate"))
+                            .field("screenNo", rs.getInt("ScreenNo"))
+                            .field("availableSeats", rs.getInt("AvailableSeats"))
+                            .field("movieName", rs.getString("MovieName"))
+                            .field("priceMultiplier", multiplier)
+                            .field("priceFrom", lowestPrice(demand, multiplier))
+                            .endObject();
                     }
-                    jsonBuilder.append("{")
-                              .append("\"showId\":").append(showId).append(",")
-                              .append("\"showTime\":\"").append(showTime).append("\",")
-                              .append("\"showDate\":\"").append(showDate).append("\",")
-                              .append("\"screenNo\":").append(screenNo).append(",")
-                              .append("\"availableSeats\":").append(availableSeats).append(",")
-                              .append("\"movieName\":\"").append(escapeJsonString(movieName)).append("\"")
-                              .append("}");
-                    first = false;
+                    json.endArray().endObject();
+                });
+            }
+        }
+    }
+    
+    private static void sendShowPage(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Catalog.Page<Catalog.ShowTiming> page;
+        try {
+            page = Catalog.shows(Catalog.ShowQuery.parse(params));
+        } catch (IllegalArgumentException e) {
+            sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 400);
+            return;
+        }
+        try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+            out.beginObject().name("showTimings").beginArray();
+            for (Catalog.ShowTiming show : page.items) {
+                Catalog.Movie movie = Catalog.movie(show.movieId);
+                ShowDemand.Show demand = ShowDemand.get(show.showId);
+                out.beginObject()
+                    .field("showId", show.showId)
+                    .field("movieId", show.movieId)
+                    .field("showTime", show.showTime != null ? show.showTime.format(DateTimeFormatter.ISO_LOCAL_TIME) : null)
+                    .field("showDate", show.showDate != null ? show.showDate.toString() : null)
+                    .field("screenNo", show.screenNo)
+                    .field("availableSeats", show.availableSeats())
+                    .field("movieName", movie != null ? movie.title : null);
+                if (demand != null) {
+                    double multiplier = demand.multiplier();
+                    out.field("priceMultiplier", multiplier)
+                        .field("priceFrom", lowestPrice(demand, multiplier));
                 }
-                jsonBuilder.append("]}");
-                
-                String response = jsonBuilder.toString();
-                System.out.println("Sending response: " + response);
-                sendJsonResponse(exchange, response, 200);
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("Database error in ShowTimingsHandler: " + e.getMessage());
-                sendJsonResponse(exchange, "{\"error\": \"Database error: " + escapeJson(e.getMessage()) + "\"}", 500);
+                out.endObject();
             }
+            out.endArray()
+                .field("nextCursor", page.nextCursor)
+                .endObject();
         }
     }
+    
+    // Cheapest bookable seat of a show at the given demand
+    private static double lowestPrice(ShowDemand.Show demand, double multiplier) {
+        double lowest = Double.MAX_VALUE;
+        for (int row = 1; row <= SeatAllocator.ROWS; row++) {
+            lowest = Math.min(lowest, Pricing.price(demand.screenNo, demand.showTime, row, multiplier));
+        }
+        return lowest;
+    }
+    
+    private static String showTimingsKey(int movieId) {
+        return "/api/showtimings?movieId=" + movieId;
+    }
 
     static class SeatsHandler implements HttpHandler {
+        // Last rendering of each show; good for as long as the show's seat version and quote terms are unchanged.
+        // Only shows in the seat map have one, and shows it forgets are dropped here too
+        private static final ConcurrentMap<Integer, RenderedSeats> RENDERED = new ConcurrentHashMap<>();
+        private static final SingleFlight<String, RenderedSeats> RENDERS = new SingleFlight<>();
+        
+        private static final class RenderedSeats {
+            final long version;
+            final PriceQuotes.Quote terms;
+            final ResponseCache.Entry entry;
+            
+            RenderedSeats(long version, PriceQuotes.Quote terms, ResponseCache.Entry entry) {
+                this.version = version;
+                this.terms = terms;
+                this.entry = entry;
+            }
+            
+            boolean isCurrent(long version, PriceQuotes.Quote terms) {
+                return this.version == version && terms.sameTerms(this.terms);
+            }
+        }
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equals("GET")) {
@@ -1101,144 +1340,148 @@ public class SimpleServer {
                 return;
             }
 
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 PreparedStatement stmt = conn.prepareStatement(GET_SEATS)) {
-                
-                stmt.setInt(1, showId);
-                ResultSet rs = stmt.executeQuery();
-                
-                Set<Integer> bookedSeats = new HashSet<>();
-                while (rs.next()) {
-                    bookedSeats.add(rs.getInt("SeatNumber"));
+            try {
+                // Served from the in-memory seat map, no query per request; nothing is kept for unknown shows
+                ShowDemand.Show demand = ShowDemand.forShow(showId);
+                SeatMap.ShowSeats showSeats = demand != null ? SeatMap.forShow(showId) : null;
+                if (showSeats == null) {
+                    sendJsonResponse(exchange, "{\"error\": \"Show timing not found\"}", 404);
+                    return;
                 }
                 
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("{\"seats\": {");
-                
-                // Generate 8 rows with 15 seats each
-                for (int row = 1; row <= 8; row++) {
-                    if (row > 1) jsonBuilder.append(",");
-                    jsonBuilder.append("\"row").append(row).append("\": [");
-                    
-                    for (int seat = 1; seat <= 15; seat++) {
-                        if (seat > 1) jsonBuilder.append(",");
-                        int seatNumber = (row - 1) * 15 + seat;
-                        jsonBuilder.append("{")
-                                  .append("\"number\":").append(seatNumber).append(",")
-                                  .append("\"isBooked\":").append(bookedSeats.contains(seatNumber))
-                                  .append("}");
+                // Any booking, hold or cancellation bumps the version, and a price change or a new
+                // quote slot changes the terms, so a match is never stale; pollers of a busy show
+                // share one rendering per change
+                long version = showSeats.version();
+                PriceQuotes.Quote terms = PriceQuotes.current(showId, demand.multiplier());
+                RenderedSeats rendered = RENDERED.get(showId);
+                if (rendered == null || !rendered.isCurrent(version, terms)) {
+                    String flight = showId + "#" + version + "#" + terms.terms();
+                    rendered = RENDERS.run(flight, () -> render(showSeats, version, demand, terms));
+                    RENDERED.put(showId, rendered);
+                    if (RENDERED.size() > SeatMap.size()) {
+                        RENDERED.keySet().removeIf(id -> !SeatMap.isLoaded(id));
+                    }
+                }
+                sendJsonEntry(exchange, rendered.entry);
+            } catch (Exception e) {
+                LOG.error("Loading seats failed", e);
+                sendJsonResponse(exchange, "{\"error\": \"Database error\"}", 500);
+            }
+        }
+        
+        // Reads the live map, so the result is at least as new as the version it is filed under
+        private static RenderedSeats render(SeatMap.ShowSeats showSeats, long version, ShowDemand.Show demand,
+                PriceQuotes.Quote terms) throws Exception {
+            byte[] body = JsonWriter.toBytes(out -> {
+                out.beginObject().name("seats").beginObject();
+                
+                // The bookable layout, the same rows and seats a booking is given
+                for (int row = 1; row <= SeatAllocator.ROWS; row++) {
+                    out.name("row" + row).beginArray();
+                    for (int seat = 1; seat <= SeatAllocator.SEATS_PER_ROW; seat++) {
+                        out.beginObject()
+                            .field("number", (row - 1) * SeatAllocator.SEATS_PER_ROW + seat)
+                            .field("seatNo", seat)
+                            .field("isBooked", showSeats.isTaken(row, seat))
+                            .endObject();
                     }
-                    jsonBuilder.append("]");
+                    out.endArray();
                 }
-                jsonBuilder.append("}}");
+                out.endObject();
                 
-                sendJsonResponse(exchange, jsonBuilder.toString(), 200);
+                // Seats taken in the old 8x15 picker numbering, which is not the ticket grid
+                out.name("reservedSeatNumbers").beginArray();
+                for (int seatNumber = 1; seatNumber <= SeatMap.PICKER_SEATS; seatNumber++) {
+                    if (showSeats.isSeatNumberTaken(seatNumber)) {
+                        out.value(seatNumber);
+                    }
+                }
+                out.endArray();
+                
+                // Price of a seat in each row, and the quote a booking can bring back to pay it
+                out.name("pricing").beginObject()
+                    .field("multiplier", terms.multiplier())
+                    .name("rows").beginObject();
+                for (int row = 1; row <= SeatAllocator.ROWS; row++) {
+                    out.field("row" + row, Pricing.price(demand.screenNo, demand.showTime, row, terms.multiplier()));
+                }
+                out.endObject()
+                    .field("quote", PriceQuotes.sign(terms))
+                    .field("quoteExpiresAt", java.time.Instant.ofEpochMilli(terms.expiresAt).toString())
+                    .endObject();
+                out.endObject();
+            });
+            return new RenderedSeats(version, terms, ResponseCache.Entry.of(body));
+        }
+    }
+    
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            
+            ConnectionPool pool;
+            try {
+                pool = DatabaseConnection.getPool();
             } catch (SQLException e) {
-                e.printStackTrace();
-                sendJsonResponse(exchange, "{\"error\": \"Database error\"}", 500);
+                // Still worth exporting the request metrics
+                pool = null;
+            }
+            byte[] body = Metrics.export(pool).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
         }
     }
     
+    // Every handler is registered through here so its requests are counted, timed and
+    // tagged with a correlation ID, taken from X-Request-Id when the caller sends a sane one
+    private static void route(HttpServer server, String path, HttpHandler handler) {
+        server.createContext(path, Metrics.instrument(path, exchange -> {
+            String requestId = exchange.getRequestHeaders().getFirst("X-Request-Id");
+            if (requestId == null || !REQUEST_ID.matcher(requestId).matches()) {
+                requestId = Log.newCorrelationId();
+            }
+            exchange.getResponseHeaders().set("X-Request-Id", requestId);
+            Log.Scope scope = Log.correlate(requestId);
+            try {
+                handler.handle(exchange);
+            } finally {
+                scope.close();
+            }
+        }));
+    }
+    
     // Utility methods for JSON handling
     private static String escapeJson(String input) {
-        if (input == null) {
-            return "";
-        }
-        StringBuilder escaped = new StringBuilder();
-        for (char c : input.toCharArray()) {
-            switch (c) {
-                case '"':
-                    escaped.append("\\\"");
-                    break;
-                case '\\':
-                    escaped.append("\\\\");
-                    break;
-                case '\b':
-                    escaped.append("\\b");
-                    break;
-                case '\f':
-                    escaped.append("\\f");
-                    break;
-                case '\n':
-                    escaped.append("\\n");
-                    break;
-                case '\r':
-                    escaped.append("\\r");
-                    break;
-                case '\t':
-                    escaped.append("\\t");
-                    break;
-                default:
-                    if (c < ' ') {
-                        escaped.append(String.format("\\u%04x", (int) c));
-                    } else {
-                        escaped.append(c);
-                    }
-            }
-        }
-        return escaped.toString();
+        return JsonWriter.escape(input);
     }
 
-    private static String extractJsonValue(String json, String key) {
-        System.out.println("Extracting key: " + key + " from JSON: " + json); // Debug log
-        
-        String keyPattern = "\"" + key + "\"\\s*:\\s*";
-        int keyIndex = json.indexOf(keyPattern);
-        if (keyIndex == -1) {
-            // Try without spaces
-            keyPattern = "\"" + key + "\":";
-            keyIndex = json.indexOf(keyPattern);
-            if (keyIndex == -1) {
-                throw new IllegalArgumentException("Key not found: " + key);
+    // Query string parameters by name, decoded; the last of a repeated name wins
+    private static Map<String, String> queryParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
             }
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
         }
-        
-        int valueStart = json.indexOf(':', keyIndex) + 1;
-        // Skip whitespace
-        while (valueStart < json.length() && Character.isWhitespace(json.charAt(valueStart))) {
-            valueStart++;
-        }
-        
-        if (valueStart >= json.length()) {
-            throw new IllegalArgumentException("Invalid JSON: unexpected end of input");
-        }
-        
-        // Handle string values
-        if (json.charAt(valueStart) == '"') {
-            valueStart++; // Skip opening quote
-            StringBuilder value = new StringBuilder();
-            boolean escaped = false;
-            
-            for (int i = valueStart; i < json.length(); i++) {
-                char c = json.charAt(i);
-                if (escaped) {
-                    value.append(c);
-                    escaped = false;
-                } else if (c == '\\') {
-                    escaped = true;
-                } else if (c == '"') {
-                    return value.toString();
-                } else {
-                    value.append(c);
-                }
-            }
-            throw new IllegalArgumentException("Invalid JSON: unterminated string");
-        }
-        
-        // Handle numeric values and booleans
-        int valueEnd = valueStart;
-        while (valueEnd < json.length() && !isJsonDelimiter(json.charAt(valueEnd))) {
-            valueEnd++;
-        }
-        
-        String value = json.substring(valueStart, valueEnd).trim();
-        System.out.println("Extracted value: " + value); // Debug log
-        return value;
+        return params;
     }
 
-    private static boolean isJsonDelimiter(char c) {
-        return c == ',' || c == '}' || c == ']' || Character.isWhitespace(c);
+    // Malformed or oversized request bodies are the client's fault, not a server error
+    private static void sendBadRequest(HttpExchange exchange, JsonReader.JsonException e) throws IOException {
+        int status = e instanceof JsonReader.BodyTooLargeException ? 413 : 400;
+        sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", status);
     }
 
     private static void sendJsonResponse(HttpExchange exchange, String response) throws IOException {
@@ -1255,9 +1498,36 @@ public class SimpleServer {
         }
     }
 
+    // Answers from the catalog cache if possible; returns false on a miss
+    private static boolean sendCachedJson(HttpExchange exchange, String cacheKey) throws IOException {
+        ResponseCache.Entry entry = CATALOG_CACHE.get(cacheKey);
+        if (entry == null) {
+            return false;
+        }
+        sendJsonEntry(exchange, entry);
+        return true;
+    }
+
+    private static void sendJsonEntry(HttpExchange exchange, ResponseCache.Entry entry) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("ETag", entry.etag);
+        // Clients may keep the body but must revalidate, which costs a 304 at most
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (ResponseCache.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), entry.etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, entry.body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(entry.body);
+        }
+    }
+
     private static void handleCors(HttpExchange exchange) throws IOException {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
         exchange.sendResponseHeaders(204, -1);
     }
@@ -1267,45 +1537,7 @@ public class SimpleServer {
         sendJsonResponse(exchange, response, statusCode);
     }
 
-    // Add this utility method before the main method
-    private static String escapeJsonString(String input) {
-        if (input == null) {
-            return "null";
-        }
-        StringBuilder sb = new StringBuilder();
-        for (char c : input.toCharArray()) {
-            switch (c) {
-                case '"':
-                    sb.append("\\\"");
-                    break;
-                case '\\':
-                    sb.append("\\\\");
-                    break;
-                case '\b':
-                    sb.append("\\b");
-                    break;
-                case '\f':
-                    sb.append("\\f");
-                    break;
-                case '\n':
-                    sb.append("\\n");
-                    break;
-                case '\r':
-                    sb.append("\\r");
-                    break;
-                case '\t':
-                    sb.append("\\t");
-                    break;
-                default:
-                    if (c < ' ') {
-                        sb.append(String.format("\\u%04x", (int) c));
-                    } else {
-                        sb.append(c);
-                    }
-            }
-        }
-        return sb.toString();
-    }
+
 
     // Then add this class near other handlers
     static class SnackInventoryHandler implements HttpHandler {
@@ -1331,85 +1563,94 @@ public class SimpleServer {
         }
         
         private void handleGetSnacks(HttpExchange exchange) throws IOException {
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 PreparedStatement stmt = conn.prepareStatement("SELECT * FROM snackscounter")) {
-                
-                ResultSet rs = stmt.executeQuery();
-                
-                StringBuilder jsonBuilder = new StringBuilder();
-                jsonBuilder.append("[");
-                boolean first = true;
-                
-                while (rs.next()) {
-                    if (!first) {
-                        jsonBuilder.append(",");
+            try {
+                // Current stock lives in memory; snackscounter.Quantity lags behind it
+                List<SnackInventory.Item> snacks = SnackInventory.all();
+                
+                try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                    out.beginArray();
+                    for (SnackInventory.Item snack : snacks) {
+                        out.beginObject()
+                            .field("id", snack.id)
+                            .field("itemName", snack.itemName)
+                            .field("price", snack.price)
+                            .field("quantity", snack.available())
+                            .endObject();
                     }
-                    jsonBuilder.append("{")
-                        .append("\"id\":").append(rs.getInt("SnackID")).append(",")
-                        .append("\"itemName\":\"").append(escapeJson(rs.getString("ItemName"))).append("\",")
-                        .append("\"price\":").append(rs.getDouble("Price")).append(",")
-                        .append("\"quantity\":").append(rs.getInt("Quantity"))
-                        .append("}");
-                    first = false;
+                    out.endArray();
                 }
-                jsonBuilder.append("]");
-                
-                sendJsonResponse(exchange, jsonBuilder.toString(), 200);
                 
             } catch (SQLException e) {
-                e.printStackTrace();
+                LOG.error("Snack admin request failed", e);
                 sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
             }
         }
         
         private void handleUpdateSnack(HttpExchange exchange) throws IOException {
             Connection conn = null;
+            Requests.Snack request = null;
+            int stockChange = 0;
             try {
-                // Read request body
-                String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                int snackId = Integer.parseInt(extractJsonValue(requestBody, "id"));
-                String itemName = extractJsonValue(requestBody, "itemName");
-                double price = Double.parseDouble(extractJsonValue(requestBody, "price"));
-                int quantity = Integer.parseInt(extractJsonValue(requestBody, "quantity"));
+                request = Requests.Snack.read(exchange, true);
+                int snackId = request.id;
+                String itemName = request.itemName;
+                double price = request.price;
+                int quantity = request.quantity;
                 
                 conn = DatabaseConnection.getConnection();
                 conn.setAutoCommit(false);
                 
-                // Update the snack
-                PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE snackscounter SET ItemName = ?, Price = ?, Quantity = ? WHERE SnackID = ?"
-                );
-                stmt.setString(1, itemName);
-                stmt.setDouble(2, price);
-                stmt.setInt(3, quantity);
-                stmt.setInt(4, snackId);
-                
-                int updated = stmt.executeUpdate();
+                // Update the snack; stock is set through the inventory below
+                int updated;
+                try (PreparedStatement stmt = conn.prepareStatement(Sql.UPDATE_SNACK)) {
+                    stmt.setString(1, itemName);
+                    stmt.setDouble(2, price);
+                    stmt.setInt(3, snackId);
+                    updated = stmt.executeUpdate();
+                }
                 
                 if (updated > 0) {
+                    // The new stock level applies in memory at once and is journalled as a change
+                    stockChange = SnackInventory.set(snackId, quantity);
+                    Map<Integer, Integer> deltas = new HashMap<>();
+                    deltas.put(snackId, stockChange);
+                    SnackInventory.journal(conn, deltas);
                     conn.commit();
+                    stockChange = 0;
+                    SnackInventory.Item snack = SnackInventory.get(snackId);
+                    if (snack != null) {
+                        snack.itemName = itemName;
+                        snack.price = price;
+                    }
+                    CATALOG_CACHE.invalidate("/api/snacks");
                     sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Snack updated successfully\"}", 200);
                 } else {
                     conn.rollback();
                     sendJsonResponse(exchange, "{\"error\": \"No snack found with ID " + snackId + "\"}", 404);
                 }
                 
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Snack admin request failed", e);
                 if (conn != null) {
                     try {
                         conn.rollback();
                     } catch (SQLException ex) {
-                        ex.printStackTrace();
+                        LOG.warn("Rollback failed", ex);
                     }
                 }
+                // Undo the in-memory stock change that did not commit
+                if (stockChange != 0) {
+                    SnackInventory.adjust(request.id, -stockChange);
+                }
                 sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
             } finally {
                 if (conn != null) {
                     try {
                         conn.close();
                     } catch (SQLException e) {
-                        e.printStackTrace();
+                        LOG.warn("Could not return connection to the pool", e);
                     }
                 }
             }
@@ -1418,34 +1659,34 @@ public class SimpleServer {
         private void handleAddSnack(HttpExchange exchange) throws IOException {
             Connection conn = null;
             try {
-                // Read request body
-                String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                String itemName = extractJsonValue(requestBody, "itemName");
-                double price = Double.parseDouble(extractJsonValue(requestBody, "price"));
-                int quantity = Integer.parseInt(extractJsonValue(requestBody, "quantity"));
+                Requests.Snack request = Requests.Snack.read(exchange, false);
+                String itemName = request.itemName;
+                double price = request.price;
+                int quantity = request.quantity;
                 
                 conn = DatabaseConnection.getConnection();
                 conn.setAutoCommit(false);
                 
                 // Insert the new snack
-                PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO snackscounter (ItemName, Price, Quantity) VALUES (?, ?, ?)",
-                    PreparedStatement.RETURN_GENERATED_KEYS
-                );
-                stmt.setString(1, itemName);
-                stmt.setDouble(2, price);
-                stmt.setInt(3, quantity);
-                
-                int added = stmt.executeUpdate();
+                int added;
+                int newSnackId = -1;
+                try (PreparedStatement stmt = conn.prepareStatement(Sql.INSERT_SNACK, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, itemName);
+                    stmt.setDouble(2, price);
+                    stmt.setInt(3, quantity);
+                    added = stmt.executeUpdate();
+                    
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (added > 0 && rs.next()) {
+                            newSnackId = rs.getInt(1);
+                        }
+                    }
+                }
                 
                 if (added > 0) {
-                    ResultSet rs = stmt.getGeneratedKeys();
-                    int newSnackId = -1;
-                    if (rs.next()) {
-                        newSnackId = rs.getInt(1);
-                    }
-                    
                     conn.commit();
+                    SnackInventory.added(newSnackId, itemName, price, quantity);
+                    CATALOG_CACHE.invalidate("/api/snacks");
                     sendJsonResponse(exchange, 
                         "{\"success\": true, \"message\": \"Snack added successfully\", \"id\": " + newSnackId + "}", 
                         201);
@@ -1454,13 +1695,15 @@ public class SimpleServer {
                     sendJsonResponse(exchange, "{\"error\": \"Failed to add snack\"}", 500);
                 }
                 
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Snack admin request failed", e);
                 if (conn != null) {
                     try {
                         conn.rollback();
                     } catch (SQLException ex) {
-                        ex.printStackTrace();
+                        LOG.warn("Rollback failed", ex);
                     }
                 }
                 sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
@@ -1469,10 +1712,96 @@ public class SimpleServer {
                     try {
                         conn.close();
                     } catch (SQLException e) {
-                        e.printStackTrace();
+                        LOG.warn("Could not return connection to the pool", e);
                     }
                 }
             }
         }
     }
+    
+    static class PricingHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            
+            if ("OPTIONS".equals(method)) {
+                handleCors(exchange);
+                return;
+            }
+            
+            // Every change reloads the rules, so the next booking is priced with it
+            try {
+                if ("GET".equals(method)) {
+                    handleGetRules(exchange);
+                } else if ("POST".equals(method)) {
+                    Pricing.Rule rule = Requests.PriceRule.read(exchange, true);
+                    if (Pricing.update(rule)) {
+                        sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Price rule updated\"}", 200);
+                    } else {
+                        sendJsonResponse(exchange, "{\"error\": \"No price rule found with ID " + rule.id + "\"}", 404);
+                    }
+                } else if ("PUT".equals(method)) {
+                    int id = Pricing.add(Requests.PriceRule.read(exchange, false));
+                    sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Price rule added\", \"id\": " + id + "}", 201);
+                } else if ("DELETE".equals(method)) {
+                    handleDeleteRule(exchange);
+                } else {
+                    sendJsonResponse(exchange, "{\"error\": \"Method not allowed\"}", 405);
+                }
+            } catch (JsonReader.JsonException e) {
+                sendBadRequest(exchange, e);
+            } catch (Exception e) {
+                LOG.error("Pricing admin request failed", e);
+                sendJsonResponse(exchange, "{\"error\": \"" + escapeJson(e.getMessage()) + "\"}", 500);
+            }
+        }
+        
+        private void handleGetRules(HttpExchange exchange) throws IOException {
+            try (JsonWriter out = JsonWriter.forResponse(exchange, 200)) {
+                out.beginObject()
+                    .field("defaultPrice", Pricing.DEFAULT_PRICE)
+                    .name("rules").beginArray();
+                // In the order they are tried
+                for (Pricing.Rule rule : Pricing.rules()) {
+                    out.beginObject().field("id", rule.id);
+                    optionalField(out, "screenNo", rule.screenNo);
+                    optionalField(out, "fromTime", rule.fromTime);
+                    optionalField(out, "toTime", rule.toTime);
+                    optionalField(out, "fromRow", rule.fromRow);
+                    optionalField(out, "toRow", rule.toRow);
+                    out.field("price", rule.price).endObject();
+                }
+                out.endArray().endObject();
+            }
+        }
+        
+        private void handleDeleteRule(HttpExchange exchange) throws IOException, SQLException {
+            String query = exchange.getRequestURI().getQuery();
+            int id;
+            try {
+                id = query != null && query.startsWith("id=") ? Integer.parseInt(query.substring(3)) : -1;
+            } catch (NumberFormatException e) {
+                id = -1;
+            }
+            if (id < 0) {
+                sendJsonResponse(exchange, "{\"error\": \"Invalid price rule ID\"}", 400);
+            } else if (Pricing.delete(id)) {
+                sendJsonResponse(exchange, "{\"success\": true, \"message\": \"Price rule deleted\"}", 200);
+            } else {
+                sendJsonResponse(exchange, "{\"error\": \"No price rule found with ID " + id + "\"}", 404);
+            }
+        }
+        
+        // Bounds a rule leaves open are written as null
+        private static void optionalField(JsonWriter out, String name, Object value) throws IOException {
+            out.name(name);
+            if (value instanceof Integer) {
+                out.value((Integer) value);
+            } else if (value != null) {
+                out.value(value.toString());
+            } else {
+                out.nullValue();
+            }
+        }
+    }
 }
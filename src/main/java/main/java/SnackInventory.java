@@ -0,0 +1,288 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snack stock, held in memory so checkout never waits on the snackscounter row lock.
+ * Orders reserve stock with a CAS that cannot take it below zero.
+ *
+ * Every stock change is committed as a row in snack_stock_journal, in the same transaction
+ * as the order, cancellation or admin edit that caused it. A background job folds committed
+ * journal rows into snackscounter.Quantity in coalesced batches and deletes them, so the
+ * true stock is always Quantity plus the journal rows not yet folded in. That is also what
+ * is loaded at startup, so a crash loses nothing. See setup_snack_inventory.sql.
+ */
+final class SnackInventory {
+    private static final Log LOG = Log.get(SnackInventory.class);
+    static final long FLUSH_INTERVAL_MILLIS = Long.getLong("inventory.flushMs", 1_000L);
+
+    private static final int FLUSH_BATCH = 5_000;
+    private static final int DELETE_CHUNK = 500;
+
+    static final class Item {
+        final int id;
+        volatile String itemName;
+        volatile double price;
+        private final AtomicInteger available;
+
+        Item(int id, String itemName, double price, int available) {
+            this.id = id;
+            this.itemName = itemName;
+            this.price = price;
+            this.available = new AtomicInteger(available);
+        }
+
+        int available() {
+            return available.get();
+        }
+
+        private boolean tryReserve(int quantity) {
+            while (true) {
+                int current = available.get();
+                if (current < quantity) {
+                    return false;
+                }
+                if (available.compareAndSet(current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /** Thrown when an order asks for more than is in stock; nothing has been reserved. */
+    static final class InsufficientStockException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InsufficientStockException(int snackId, int requested, int available) {
+            super("Insufficient stock for snack ID: " + snackId +
+                  " (Requested: " + requested + ", Available: " + available + ")");
+        }
+    }
+
+    private static final ConcurrentMap<Integer, Item> ITEMS = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+    private static ScheduledExecutorService flusher;
+
+    private SnackInventory() {
+    }
+
+    /**
+     * Loads stock for every snack; returns how many were loaded. Refused until the booking
+     * ledger has replayed, since stock read before that would miss its unapplied orders.
+     */
+    static synchronized int load() throws SQLException {
+        if (!BookingLedger.isOpen()) {
+            throw new SQLException("Booking ledger has not been replayed yet");
+        }
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return load(conn);
+        }
+    }
+
+    private static synchronized int load(Connection conn) throws SQLException {
+        Map<Integer, Item> items = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(Sql.LOAD_STOCK);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt("SnackID");
+                items.put(id, new Item(id, rs.getString("ItemName"), rs.getDouble("Price"), rs.getInt("Available")));
+            }
+        }
+        ITEMS.clear();
+        ITEMS.putAll(items);
+        loaded = true;
+        return items.size();
+    }
+
+    // Loads on first use if the startup load failed
+    private static void ensureLoaded() throws SQLException {
+        if (!loaded) {
+            synchronized (SnackInventory.class) {
+                if (!loaded) {
+                    load();
+                }
+            }
+        }
+    }
+
+    static Item get(int snackId) throws SQLException {
+        ensureLoaded();
+        return ITEMS.get(snackId);
+    }
+
+    /** Every snack, in SnackID order. */
+    static List<Item> all() throws SQLException {
+        ensureLoaded();
+        List<Item> items = new ArrayList<>(ITEMS.values());
+        items.sort(Comparator.comparingInt(item -> item.id));
+        return items;
+    }
+
+    /**
+     * Reserves every quantity or none. Stock taken here must either be journalled with
+     * {@link #journal} in a transaction that commits, logged in the {@link BookingLedger},
+     * or handed back with {@link #release}.
+     */
+    static Map<Integer, Item> reserve(Map<Integer, Integer> quantities)
+            throws SQLException, InsufficientStockException {
+        ensureLoaded();
+        Map<Integer, Item> reserved = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            Item item = ITEMS.get(entry.getKey());
+            if (item == null || !item.tryReserve(entry.getValue())) {
+                for (Map.Entry<Integer, Item> taken : reserved.entrySet()) {
+                    taken.getValue().available.addAndGet(quantities.get(taken.getKey()));
+                }
+                throw new InsufficientStockException(entry.getKey(), entry.getValue(),
+                    item == null ? 0 : item.available());
+            }
+            reserved.put(entry.getKey(), item);
+        }
+        return reserved;
+    }
+
+    /** Returns stock to memory, after a failed order or a committed cancellation. */
+    static void release(Map<Integer, Integer> quantities) {
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            Item item = ITEMS.get(entry.getKey());
+            if (item != null) {
+                item.available.addAndGet(entry.getValue());
+            }
+        }
+    }
+
+    /** Adds journal rows for stock changes (negative for orders) to the caller's transaction. */
+    static void journal(Connection conn, Map<Integer, Integer> deltas) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(Sql.INSERT_JOURNAL)) {
+            for (Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+                if (entry.getValue() == 0) {
+                    continue;
+                }
+                stmt.setInt(1, entry.getKey());
+                stmt.setInt(2, entry.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Sets a snack's stock to an absolute value in memory and returns the change, which the
+     * caller journals; concurrent orders keep reserving against the new value. If the
+     * caller's transaction fails it must undo the change with {@link #adjust}.
+     */
+    static int set(int snackId, int quantity) throws SQLException {
+        Item item = get(snackId);
+        if (item == null) {
+            return 0;
+        }
+        return quantity - item.available.getAndSet(quantity);
+    }
+
+    static void adjust(int snackId, int delta) {
+        Item item = ITEMS.get(snackId);
+        if (item != null) {
+            item.available.addAndGet(delta);
+        }
+    }
+
+    /** Records a newly inserted snack once its insert has committed. */
+    static void added(int snackId, String itemName, double price, int quantity) {
+        ITEMS.put(snackId, new Item(snackId, itemName, price, quantity));
+    }
+
+    static void start() {
+        synchronized (SnackInventory.class) {
+            if (flusher != null) {
+                return;
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snack-inventory-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                LOG.warn("Snack inventory flush failed, will retry: {}", e.getMessage());
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Folds committed journal rows into snackscounter, one UPDATE per snack per batch, and
+     * deletes them in the same transaction. Rows are deleted by key rather than by range so
+     * an order still committing is never swept up before it has been counted.
+     */
+    static synchronized int flush() throws SQLException {
+        int total = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            while (true) {
+                Map<Integer, Integer> deltas = new HashMap<>();
+                List<Long> seqs = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(Sql.JOURNAL_BATCH)) {
+                    stmt.setInt(1, FLUSH_BATCH);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            seqs.add(rs.getLong("Seq"));
+                            deltas.merge(rs.getInt("SnackID"), rs.getInt("Delta"), Integer::sum);
+                        }
+                    }
+                }
+                if (seqs.isEmpty()) {
+                    conn.commit();
+                    return total;
+                }
+
+                try (PreparedStatement update = conn.prepareStatement(Sql.APPLY_STOCK)) {
+                    for (Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+                        if (entry.getValue() == 0) {
+                            continue;
+                        }
+                        update.setInt(1, entry.getValue());
+                        update.setInt(2, entry.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+                for (int from = 0; from < seqs.size(); from += DELETE_CHUNK) {
+                    List<Long> chunk = seqs.subList(from, Math.min(from + DELETE_CHUNK, seqs.size()));
+                    StringBuilder sql = new StringBuilder("DELETE FROM snack_stock_journal WHERE Seq IN (");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        sql.append(i == 0 ? "?" : ", ?");
+                    }
+                    try (PreparedStatement delete = conn.prepareStatement(sql.append(')').toString())) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            delete.setLong(i + 1, chunk.get(i));
+                        }
+                        delete.executeUpdate();
+                    }
+                }
+                conn.commit();
+                total += seqs.size();
+                if (seqs.size() < FLUSH_BATCH) {
+                    return total;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package main.java;
+
+/**
+ * Every fixed statement the server runs, by name. Pooled connections keep the statements
+ * they prepare, keyed by SQL text, so using these constants rather than building strings
+ * at the call site is what lets a statement be parsed once and reused. Only the
+ * {@code IN (?, ?, ...)} lists of the bulk cancellation and journal flush are built
+ * per call, since their length varies.
+ */
+final class Sql {
+    // Catalog
+    static final String MOVIES = "SELECT * FROM movie";
+    static final String LOAD_SHOWS =
+        "SELECT ShowID, MovieID, ShowTime, ShowDate, ScreenNo, AvailableSeats FROM show_timings";
+    static final String SHOW_TIMINGS =
+        "SELECT s.ShowID, s.ShowTime, s.ShowDate, s.ScreenNo, s.AvailableSeats, m.Title as MovieName " +
+        "FROM show_timings s JOIN movie m ON s.MovieID = m.MovieID " +
+        "WHERE s.MovieID = ?";
+
+    // Booking
+    static final String SEATS_LEFT = "SELECT AvailableSeats FROM show_timings WHERE ShowID = ?";
+    static final String INSERT_CUSTOMER = "INSERT INTO customer (Name, Age, Gender) VALUES (?, ?, ?)";
+    static final String INSERT_RESERVATION =
+        "INSERT INTO reservation (DateTime, Mode, CustomerID, MovieID) VALUES (NOW(), 'Online', ?, ?)";
+    static final String SHOW_DETAILS =
+        "SELECT s.MovieID, m.Title, s.ScreenNo, s.ShowTime, s.ShowDate " +
+        "FROM show_timings s JOIN movie m ON s.MovieID = m.MovieID " +
+        "WHERE s.ShowID = ?";
+    static final String INSERT_TICKET =
+        "INSERT INTO tickets (SeatNo, RowNo, ScreenNo, ReservationID, Price, ShowID) VALUES (?, ?, ?, ?, ?, ?)";
+    static final String TAKE_SEATS =
+        "UPDATE show_timings SET AvailableSeats = AvailableSeats - ? WHERE ShowID = ? AND AvailableSeats >= ?";
+
+    // Pricing
+    static final String LOAD_PRICE_RULES =
+        "SELECT RuleID, ScreenNo, FromTime, ToTime, FromRow, ToRow, Price FROM price_rules";
+    static final String INSERT_PRICE_RULE =
+        "INSERT INTO price_rules (ScreenNo, FromTime, ToTime, FromRow, ToRow, Price) VALUES (?, ?, ?, ?, ?, ?)";
+    static final String UPDATE_PRICE_RULE =
+        "UPDATE price_rules SET ScreenNo = ?, FromTime = ?, ToTime = ?, FromRow = ?, ToRow = ?, Price = ? WHERE RuleID = ?";
+    static final String DELETE_PRICE_RULE = "DELETE FROM price_rules WHERE RuleID = ?";
+    static final String LOAD_SHOW = "SELECT ScreenNo, ShowTime, AvailableSeats FROM show_timings WHERE ShowID = ?";
+
+    // Confirmation
+    static final String RESERVATION_TICKETS =
+        "SELECT DISTINCT t.*, m.Title as MovieTitle, st.ShowTime, st.ShowDate, st.ScreenNo, " +
+        "e.Name as EmployeeName " +
+        "FROM tickets t " +
+        "JOIN show_timings st ON t.ShowID = st.ShowID " +
+        "JOIN movie m ON st.MovieID = m.MovieID " +
+        "LEFT JOIN (SELECT DISTINCT ReservationID, EmployeeID FROM snackorders) so ON t.ReservationID = so.ReservationID " +
+        "LEFT JOIN employees e ON so.EmployeeID = e.EmployeeID " +
+        "WHERE t.ReservationID = ?";
+    static final String RESERVATION_SNACKS =
+        "SELECT s.ItemName, so.Quantity, s.Price " +
+        "FROM snackorders so " +
+        "JOIN snackscounter s ON so.SnackID = s.SnackID " +
+        "WHERE so.ReservationID = ?";
+
+    // Cancellation; the per-reservation deletes take an IN list and are built per chunk
+    static final String SHOW_RESERVATIONS =
+        "SELECT DISTINCT ReservationID FROM tickets WHERE ShowID = ? ORDER BY ReservationID";
+    static final String RESTORE_SEATS = "UPDATE show_timings SET AvailableSeats = AvailableSeats + ? WHERE ShowID = ?";
+
+    // Accounts
+    static final String LOGIN = "SELECT * FROM customer WHERE Email = ? AND Password = ?";
+    static final String EMAIL_COUNT = "SELECT COUNT(*) FROM customer WHERE Email = ?";
+    static final String INSERT_ACCOUNT = "INSERT INTO customer (Name, Age, Gender, Email, Password) VALUES (?, ?, ?, ?, ?)";
+
+    // Snacks
+    static final String UPDATE_SNACK = "UPDATE snackscounter SET ItemName = ?, Price = ? WHERE SnackID = ?";
+    static final String INSERT_SNACK = "INSERT INTO snackscounter (ItemName, Price, Quantity) VALUES (?, ?, ?)";
+    static final String LOAD_STOCK =
+        "SELECT s.SnackID, s.ItemName, s.Price, s.Quantity + COALESCE(j.Pending, 0) AS Available " +
+        "FROM snackscounter s LEFT JOIN " +
+        "(SELECT SnackID, SUM(Delta) AS Pending FROM snack_stock_journal GROUP BY SnackID) j " +
+        "ON s.SnackID = j.SnackID";
+    static final String INSERT_JOURNAL = "INSERT INTO snack_stock_journal (SnackID, Delta) VALUES (?, ?)";
+    static final String JOURNAL_BATCH = "SELECT Seq, SnackID, Delta FROM snack_stock_journal ORDER BY Seq LIMIT ?";
+    static final String APPLY_STOCK = "UPDATE snackscounter SET Quantity = Quantity + ? WHERE SnackID = ?";
+
+    // Booking ledger
+    static final String RESERVATION_EXISTS = "SELECT 1 FROM reservation WHERE ReservationID = ?";
+    static final String INSERT_SNACK_ORDER =
+        "INSERT INTO snackorders (ReservationID, SnackID, Quantity, EmployeeID) VALUES (?, ?, ?, ?)";
+    static final String CONFIRM_RESERVATION = "UPDATE reservation SET Status = 'Confirmed' WHERE ReservationID = ?";
+    static final String READ_CHECKPOINT = "SELECT AppliedLsn FROM booking_ledger_checkpoint WHERE Id = 1";
+    static final String INSERT_CHECKPOINT = "INSERT INTO booking_ledger_checkpoint (Id, AppliedLsn) VALUES (1, 0)";
+    static final String ADVANCE_CHECKPOINT = "UPDATE booking_ledger_checkpoint SET AppliedLsn = ? WHERE Id = 1";
+
+    // Seat map
+    static final String SHOW_EXISTS = "SELECT 1 FROM show_timings WHERE ShowID = ?";
+    static final String LOAD_TICKETS = "SELECT ShowID, RowNo, SeatNo FROM tickets";
+    static final String LOAD_SHOW_TICKETS = "SELECT RowNo, SeatNo FROM tickets WHERE ShowID = ?";
+    static final String LOAD_RESERVED_SEATS = "SELECT ShowID, SeatNumber FROM reservations";
+    static final String LOAD_SHOW_RESERVED_SEATS = "SELECT SeatNumber FROM reservations WHERE ShowID = ?";
+
+    // Trending and staff
+    static final String MOVIE_TICKET_COUNTS =
+        "SELECT s.MovieID, COUNT(t.TicketID) AS Total FROM show_timings s " +
+        "JOIN tickets t ON s.ShowID = t.ShowID " +
+        "GROUP BY s.MovieID";
+    static final String SNACK_ORDER_COUNTS =
+        "SELECT SnackID, SUM(Quantity) AS Total FROM snackorders GROUP BY SnackID";
+    static final String LOAD_EMPLOYEES = "SELECT EmployeeID, Name FROM employees ORDER BY EmployeeID";
+
+    private Sql() {
+    }
+}
@@ -0,0 +1,88 @@
+package main.java;
+
+import util.DatabaseConnection;
+import util.Log;
+import util.TopKCounter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trending movies (by tickets sold) and snacks (by quantity ordered). The booking, snack
+ * order and cancellation handlers keep the counters current; a background job periodically
+ * reconciles them with the database to correct any drift.
+ */
+final class Trending {
+    private static final Log LOG = Log.get(Trending.class);
+    static final long RECONCILE_INTERVAL_MILLIS = Long.getLong("trending.reconcileMs", 5 * 60 * 1000L);
+
+    private static final TopKCounter MOVIES = new TopKCounter(10, 1_000);
+    private static final TopKCounter SNACKS = new TopKCounter(10, 1_000);
+
+    private static ScheduledExecutorService reconciler;
+
+    private Trending() {
+    }
+
+    static void movieTicketsSold(int movieId, int tickets) {
+        MOVIES.add(movieId, tickets);
+    }
+
+    static void snackOrdered(int snackId, int quantity) {
+        SNACKS.add(snackId, quantity);
+    }
+
+    /** Returns 0 when nothing has been sold yet. */
+    static int topMovie() {
+        List<Integer> top = MOVIES.top(1);
+        return top.isEmpty() ? 0 : top.get(0);
+    }
+
+    static List<Integer> topSnacks(int count) {
+        return SNACKS.top(count);
+    }
+
+    static synchronized void start() {
+        if (reconciler != null) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trending-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        // First run loads the counters at startup
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (SQLException e) {
+                LOG.warn("Trending reconciliation failed: {}", e.getMessage());
+            }
+        }, 0, RECONCILE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    static void reconcile() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            MOVIES.reset(loadCounts(conn, Sql.MOVIE_TICKET_COUNTS, "MovieID"));
+            SNACKS.reset(loadCounts(conn, Sql.SNACK_ORDER_COUNTS, "SnackID"));
+        }
+    }
+
+    private static Map<Integer, Long> loadCounts(Connection conn, String sql, String idColumn) throws SQLException {
+        Map<Integer, Long> counts = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getInt(idColumn), rs.getLong("Total"));
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,273 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer for {@link Log}. Request threads only claim a slot in a bounded ring
+ * buffer with one CAS; a single writer thread drains it in batches, formats the events and
+ * writes them to a rolling file and the console, flushing once per batch.
+ *
+ * When the buffer is full, DEBUG and INFO events are dropped (and counted in the log);
+ * WARN and ERROR events wait up to {@link #FULL_WAIT_MILLIS} for room first.
+ *
+ * Configuration:
+ * -Dlog.file (default logs/server.log, empty for none), -Dlog.console (default true),
+ * -Dlog.maxBytes per file before rolling (default 10MB), -Dlog.maxFiles kept (default 5),
+ * -Dlog.bufferSize events (default 8192, rounded up to a power of two).
+ */
+final class AsyncAppender {
+    private static final String FILE = System.getProperty("log.file", "logs/server.log");
+    private static final boolean CONSOLE = Boolean.parseBoolean(System.getProperty("log.console", "true"));
+    private static final long MAX_BYTES = Long.getLong("log.maxBytes", 10L * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger("log.maxFiles", 5);
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("log.bufferSize", 8192) - 1)) << 1;
+    private static final long FULL_WAIT_MILLIS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    static final class Event {
+        final long timestamp;
+        final Log.Level level;
+        final String logger;
+        final String thread;
+        final String correlationId;
+        final String format;
+        final Object[] args;
+
+        Event(long timestamp, Log.Level level, String logger, String thread, String correlationId,
+              String format, Object[] args) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.logger = logger;
+            this.thread = thread;
+            this.correlationId = correlationId;
+            this.format = format;
+            this.args = args;
+        }
+    }
+
+    // A slot is published when it is non-null; the writer clears it before moving head on
+    private static final AtomicReferenceArray<Event> SLOTS = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long head;
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private static volatile boolean closing;
+    private static final Thread WRITER;
+
+    private static Writer file;
+    private static long fileBytes;
+    private static final Writer console = CONSOLE
+        ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 16 * 1024) : null;
+
+    static {
+        WRITER = new Thread(AsyncAppender::run, "log-writer");
+        WRITER.setDaemon(true);
+        WRITER.start();
+    }
+
+    private AsyncAppender() {
+    }
+
+    static void append(Event event) {
+        long deadline = 0;
+        while (true) {
+            long tail = TAIL.get();
+            long used = tail - head;
+            if (used >= CAPACITY) {
+                if (closing || event.level.compareTo(Log.Level.WARN) < 0) {
+                    DROPPED.increment();
+                    return;
+                }
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + TimeUnit.MILLISECONDS.toNanos(FULL_WAIT_MILLIS);
+                } else if (now > deadline) {
+                    DROPPED.increment();
+                    return;
+                }
+                LockSupport.unpark(WRITER);
+                Thread.yield();
+                continue;
+            }
+            if (TAIL.compareAndSet(tail, tail + 1)) {
+                SLOTS.set((int) (tail & (CAPACITY - 1)), event);
+                // Wake the writer early once the buffer is half full
+                if (used == CAPACITY / 2 || event.level == Log.Level.ERROR) {
+                    LockSupport.unpark(WRITER);
+                }
+                return;
+            }
+        }
+    }
+
+    static void shutdown() {
+        closing = true;
+        LockSupport.unpark(WRITER);
+        try {
+            WRITER.join(2_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void run() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            boolean stopping = closing;
+            int written = 0;
+            try {
+                long dropped = DROPPED.sumThenReset();
+                if (dropped > 0) {
+                    line.setLength(0);
+                    line.append(Instant.now()).append(" WARN  [log-writer] AsyncAppender - Log buffer full, dropped ")
+                        .append(dropped).append(" events\n");
+                    write(line);
+                }
+                Event event;
+                long position = head;
+                while ((event = SLOTS.get((int) (position & (CAPACITY - 1)))) != null) {
+                    SLOTS.set((int) (position & (CAPACITY - 1)), null);
+                    head = ++position;
+                    line.setLength(0);
+                    format(event, line);
+                    write(line);
+                    written++;
+                }
+                if (written > 0 || dropped > 0) {
+                    flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Log writer failed: " + e);
+            }
+            if (stopping && TAIL.get() == head) {
+                closeFile();
+                return;
+            }
+            if (written == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void format(Event event, StringBuilder out) {
+        out.append(Instant.ofEpochMilli(event.timestamp)).append(' ').append(event.level);
+        if (event.level.name().length() == 4) {
+            out.append(' ');
+        }
+        out.append(" [").append(event.thread).append(']');
+        if (event.correlationId != null) {
+            out.append(" [").append(event.correlationId).append(']');
+        }
+        out.append(' ').append(event.logger).append(" - ");
+
+        Object[] args = event.args;
+        int used = 0;
+        String format = event.format == null ? "null" : event.format;
+        if (args == null) {
+            out.append(format);
+        } else {
+            int from = 0;
+            int at;
+            while (used < args.length && (at = format.indexOf("{}", from)) >= 0) {
+                out.append(format, from, at).append(render(args[used++]));
+                from = at + 2;
+            }
+            out.append(format, from, format.length());
+        }
+        out.append('\n');
+
+        // A Throwable not consumed by a placeholder gets its stack trace
+        if (args != null && used < args.length && args[args.length - 1] instanceof Throwable) {
+            StringWriter trace = new StringWriter();
+            ((Throwable) args[args.length - 1]).printStackTrace(new PrintWriter(trace));
+            out.append(trace);
+        }
+    }
+
+    private static String render(Object arg) {
+        try {
+            return String.valueOf(arg);
+        } catch (RuntimeException e) {
+            return "[" + arg.getClass().getName() + ".toString() failed: " + e + "]";
+        }
+    }
+
+    private static void write(CharSequence line) throws IOException {
+        if (console != null) {
+            console.append(line);
+        }
+        if (FILE.isEmpty()) {
+            return;
+        }
+        if (file == null || fileBytes >= MAX_BYTES) {
+            roll();
+        }
+        file.append(line);
+        // Close enough for rolling; log lines are almost all ASCII
+        fileBytes += line.length();
+    }
+
+    private static void flush() throws IOException {
+        if (console != null) {
+            console.flush();
+        }
+        if (file != null) {
+            file.flush();
+        }
+    }
+
+    // server.log becomes server.log.1, server.log.1 becomes server.log.2, and so on
+    private static void roll() throws IOException {
+        Path path = Paths.get(FILE);
+        if (file != null) {
+            file.close();
+            file = null;
+            Files.deleteIfExists(Paths.get(FILE + "." + MAX_FILES));
+            for (int i = MAX_FILES - 1; i >= 1; i--) {
+                Path from = Paths.get(FILE + "." + i);
+                if (Files.exists(from)) {
+                    Files.move(from, Paths.get(FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (MAX_FILES > 0) {
+                Files.move(path, Paths.get(FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(path);
+            }
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        fileBytes = Files.exists(path) ? Files.size(path) : 0;
+        file = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static void closeFile() {
+        try {
+            flush();
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not close log file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded JDBC connection pool. Borrowed connections are handed out as proxies
+ * whose close() returns the physical connection to the pool instead of closing it.
+ *
+ * Each physical connection keeps up to {@code statementCacheSize} prepared statements,
+ * least recently used evicted first. Closing a cached statement puts it back for the next
+ * prepareStatement() with the same SQL, so it is parsed (and, with server-side prepares,
+ * prepared on the database) once per connection. Statements a borrower leaves open are
+ * closed, or put back, when the connection is returned.
+ */
+public class ConnectionPool {
+    private static final Log LOG = Log.get(ConnectionPool.class);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+
+    // Idle connections, most recently returned first so hot connections get reused
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationIntervalMillis = 5_000;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, Math.min(idleTimeoutMillis, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a database connection "
+                        + "(active=" + borrowed.size() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (validate(pooled)) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            Metrics.poolWait(System.nanoTime() - start);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        // Skip the round trip for connections that were in use a moment ago
+        if (System.currentTimeMillis() - pooled.lastUsedAt < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        boolean healthy = true;
+        try {
+            if (pooled.physical.isClosed()) {
+                healthy = false;
+            } else if (!pooled.physical.getAutoCommit()) {
+                // Anything the handler left uncommitted is discarded, not leaked into the next borrower
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        if (healthy && !closed) {
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            discard(pooled);
+        }
+        permits.release();
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOG.warn("Error closing pooled connection: {}", e.getMessage());
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // Evict connections that sat idle too long, oldest (tail) first, down to minSize
+        PooledConnection candidate;
+        while (totalConnections.get() > minSize && (candidate = idle.peekLast()) != null
+                && now - candidate.lastUsedAt > idleTimeoutMillis) {
+            if (idle.removeLastOccurrence(candidate)) {
+                discard(candidate);
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+                    pooled.leakReported = true;
+                    // The borrow site, when recorded, is logged as the stack trace
+                    LOG.warn("Possible connection leak: connection held for {}ms", now - pooled.borrowedAt, pooled.borrowSite);
+                }
+            }
+        }
+
+        // Top the pool back up to minSize. Each connection is opened under a permit, like a borrow, so
+        // borrowers opening their own at the same time cannot take idle + active past maxSize; when
+        // every permit is in use the pool is busy enough and the refill waits for the next run
+        while (!closed && totalConnections.get() < minSize && permits.tryAcquire()) {
+            try {
+                if (totalConnections.get() >= minSize) {
+                    break;
+                }
+                PooledConnection pooled = open();
+                pooled.lastUsedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                LOG.warn("Could not refill connection pool: {}", e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long lastUsedAt = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        // Idle prepared statements by cache key, in access order; only the borrower touches it
+        final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        // Takes an idle statement out of the cache; another prepare of the same SQL gets a new one
+        PreparedStatement checkOut(String key) {
+            return statements.remove(key);
+        }
+
+        void checkIn(String key, PreparedStatement statement) {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                return;
+            }
+            if (statements.putIfAbsent(key, statement) != null) {
+                closeQuietly(statement);
+            }
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new Handle(this)
+            );
+        }
+    }
+
+    // One handle per borrow, so a stale reference cannot touch a connection that was re-lent
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        // Statements handed out on this borrow and not yet closed
+        private final List<PooledStatement> open = new ArrayList<>();
+        private boolean released;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        closeOpenStatements();
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            String cacheKey = cacheKey(method, args);
+            if (cacheKey != null) {
+                PreparedStatement cached = pooled.checkOut(cacheKey);
+                if (cached != null) {
+                    return track(PreparedStatement.class, cached, (String) args[0], cacheKey);
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            switch (method.getName()) {
+                case "prepareStatement":
+                case "prepareCall":
+                    return track(method.getReturnType(), (Statement) result, (String) args[0], cacheKey);
+                case "createStatement":
+                    return track(method.getReturnType(), (Statement) result, null, null);
+                default:
+                    return result;
+            }
+        }
+
+        private Object track(Class<?> type, Statement statement, String sql, String cacheKey) {
+            PooledStatement handler = new PooledStatement(this, statement, sql, cacheKey);
+            open.add(handler);
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+        }
+
+        private void closeOpenStatements() {
+            if (open.isEmpty()) {
+                return;
+            }
+            LOG.debug("Closing {} statements left open on a returned connection", open.size());
+            for (PooledStatement statement : new ArrayList<>(open)) {
+                statement.close();
+            }
+        }
+    }
+
+    // Plain prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) are cached; other variants are not
+    private String cacheKey(Method method, Object[] args) {
+        if (statementCacheSize <= 0 || !method.getName().equals("prepareStatement")) {
+            return null;
+        }
+        if (args.length == 1) {
+            return (String) args[0];
+        }
+        if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+            return args[0] + "\u0000" + args[1];
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.warn("Error closing statement: {}", e.getMessage());
+        }
+    }
+
+    // Puts cached statements back on close, and records how long each execute call takes, per query, in Metrics
+    private static final class PooledStatement implements InvocationHandler {
+        private final Handle owner;
+        private final Statement statement;
+        private final String cacheKey;
+        private final Metrics.Query preparedQuery;
+        private boolean closed;
+
+        PooledStatement(Handle owner, Statement statement, String sql, String cacheKey) {
+            this.owner = owner;
+            this.statement = statement;
+            this.cacheKey = cacheKey;
+            this.preparedQuery = sql != null ? Metrics.query(sql) : null;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            owner.open.remove(this);
+            if (cacheKey != null) {
+                owner.pooled.checkIn(cacheKey, (PreparedStatement) statement);
+            } else {
+                closeQuietly(statement);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            Metrics.Query query = null;
+            if (method.getName().startsWith("execute")) {
+                // A plain Statement is given its SQL with each execute call
+                query = preparedQuery != null ? preparedQuery
+                    : args != null && args.length > 0 && args[0] instanceof String ? Metrics.query((String) args[0]) : null;
+            }
+            if (query == null) {
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = method.invoke(statement, args);
+                failed = false;
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                query.record(System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
@@ -1,27 +1,61 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/ticketbookingsystem?allowPublicKeyRetrieval=true&useSSL=false";
-    private static final String USER = "root";
-    private static final String PASSWORD = "Root@123";
+    private static final Log LOG = Log.get(DatabaseConnection.class);
+    // Server-side prepares, so a statement the pool keeps open is parsed by MySQL only once.
+    // Statements are cached by the pool per connection, not by the driver as well
+    private static final String URL = System.getProperty("db.url",
+            "jdbc:mysql://localhost:3306/ticketbookingsystem?allowPublicKeyRetrieval=true&useSSL=false&rewriteBatchedStatements=true"
+            + "&useServerPrepStmts=true");
+    private static final String USER = System.getProperty("db.user", "root");
+    private static final String PASSWORD = System.getProperty("db.password", "Root@123");
+
+    // Pool sizing, overridable with -Ddb.pool.* on the command line
+    private static final int POOL_MIN_SIZE = Integer.getInteger("db.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("db.pool.maxSize", 20);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("db.pool.idleTimeoutMs", 300_000L);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("db.pool.borrowTimeoutMs", 5_000L);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("db.pool.leakThresholdMs", 60_000L);
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 64);
+
+    private static volatile ConnectionPool pool;
 
     public static Connection getConnection() throws SQLException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            System.out.println("Connecting to database...");
-            Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-            System.out.println("Database connected!");
-            return conn;
-        } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC Driver not found: " + e.getMessage());
-            throw new SQLException("MySQL JDBC Driver not found.", e);
-        } catch (SQLException e) {
-            System.err.println("Database connection error: " + e.getMessage());
-            throw e;
+        return getPool().borrow();
+    }
+
+    public static ConnectionPool getPool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConnection.class) {
+                current = pool;
+                if (current == null) {
+                    try {
+                        Class.forName("com.mysql.cj.jdbc.Driver");
+                    } catch (ClassNotFoundException e) {
+                        LOG.error("MySQL JDBC Driver not found: {}", e.getMessage());
+                        throw new SQLException("MySQL JDBC Driver not found.", e);
+                    }
+                    current = new ConnectionPool(URL, USER, PASSWORD,
+                            POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS,
+                            POOL_STATEMENT_CACHE_SIZE);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public static void shutdown() {
+        synchronized (DatabaseConnection.class) {
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
         }
     }
-}
\ No newline at end of file
+}
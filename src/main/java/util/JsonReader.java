@@ -0,0 +1,469 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single-pass pull parser for JSON request bodies. Bytes are tokenized straight off the
+ * stream, so each body is read once no matter how many fields are bound from it. Caps on
+ * body size and nesting depth are enforced while reading.
+ *
+ * Scalars are read leniently, the way the web app sends them: numbers may arrive quoted
+ * ("42") and strings may arrive as bare literals.
+ */
+public final class JsonReader {
+    public static final int MAX_BODY_BYTES = Integer.getInteger("request.maxBodyBytes", 64 * 1024);
+    public static final int MAX_DEPTH = Integer.getInteger("request.maxDepth", 16);
+
+    private static final int MAX_LITERAL_LENGTH = 64;
+
+    private final InputStream in;
+    private final int maxBytes;
+    private final int maxDepth;
+    private final byte[] buf = new byte[4096];
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    // Per depth: whether the container is an object, and whether a comma was just consumed
+    private final boolean[] inObject;
+    private final boolean[] pendingComma;
+    private int depth;
+    private boolean nameRead;
+    private String currentName;
+
+    private byte[] scratch = new byte[128];
+
+    /** Malformed or unexpected input; the message is safe to show to the client. */
+    public static class JsonException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public JsonException(String message) {
+            super(message);
+        }
+    }
+
+    /** The body went over the size limit. */
+    public static final class BodyTooLargeException extends JsonException {
+        private static final long serialVersionUID = 1L;
+
+        public BodyTooLargeException(int maxBytes) {
+            super("Request body exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    /** Receives one object member at a time; return false to have the value skipped. */
+    @FunctionalInterface
+    public interface FieldReader {
+        boolean read(String name, JsonReader in) throws IOException;
+    }
+
+    private JsonReader(InputStream in, int maxBytes, int maxDepth) {
+        this.in = in;
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.inObject = new boolean[maxDepth + 1];
+        this.pendingComma = new boolean[maxDepth + 1];
+    }
+
+    public static JsonReader of(InputStream in, int maxBytes, int maxDepth) {
+        return new JsonReader(in, maxBytes, maxDepth);
+    }
+
+    /** Reads the request body with the configured limits, rejecting oversized bodies up front. */
+    public static JsonReader forRequest(HttpExchange exchange) {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > MAX_BODY_BYTES) {
+                    throw new BodyTooLargeException(MAX_BODY_BYTES);
+                }
+            } catch (NumberFormatException e) {
+                // Let the byte count enforce the limit instead
+            }
+        }
+        return new JsonReader(exchange.getRequestBody(), MAX_BODY_BYTES, MAX_DEPTH);
+    }
+
+    /**
+     * Reads a whole document whose root is an object, handing each member to {@code fields},
+     * and checks that nothing follows it.
+     */
+    public void readDocument(FieldReader fields) throws IOException {
+        readObject(fields);
+        if (peekNonWhitespace() != -1) {
+            throw error("Unexpected data after the JSON document");
+        }
+    }
+
+    /** Reads one object, handing each member to {@code fields}; unhandled members are skipped. */
+    public void readObject(FieldReader fields) throws IOException {
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (!fields.read(name, this)) {
+                skipValue();
+            }
+        }
+        endObject();
+    }
+
+    public void beginObject() throws IOException {
+        open('{', true);
+    }
+
+    public void endObject() throws IOException {
+        close('}', true);
+    }
+
+    public void beginArray() throws IOException {
+        open('[', false);
+    }
+
+    public void endArray() throws IOException {
+        close(']', false);
+    }
+
+    /** True if the current object or array has another member. */
+    public boolean hasNext() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '}' || c == ']') {
+            if (pendingComma[depth]) {
+                throw error("Trailing comma");
+            }
+            return false;
+        }
+        if (c == -1) {
+            throw error("Unexpected end of input");
+        }
+        return true;
+    }
+
+    public String nextName() throws IOException {
+        if (depth == 0 || !inObject[depth] || nameRead) {
+            throw error("Expected a value");
+        }
+        if (peekNonWhitespace() != '"') {
+            throw error("Expected a field name");
+        }
+        pos++;
+        String name = readStringBody();
+        if (peekNonWhitespace() != ':') {
+            throw error("Expected ':' after \"" + name + "\"");
+        }
+        pos++;
+        pendingComma[depth] = false;
+        nameRead = true;
+        currentName = name;
+        return name;
+    }
+
+    /** A string, or the text of a bare literal; null for JSON null. */
+    public String nextString() throws IOException {
+        beforeValue();
+        String value;
+        if (peekNonWhitespace() == '"') {
+            pos++;
+            value = readStringBody();
+        } else {
+            value = readLiteral();
+            if (value.equals("null")) {
+                value = null;
+            }
+        }
+        afterValue();
+        return value;
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidValue();
+        }
+        return (int) value;
+    }
+
+    public long nextLong() throws IOException {
+        String text = nextNumberText();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw invalidValue();
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        String text = nextNumberText();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw invalidValue();
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        String text = nextString();
+        if ("true".equals(text)) {
+            return true;
+        }
+        if ("false".equals(text)) {
+            return false;
+        }
+        throw invalidValue();
+    }
+
+    /** Skips the next value, including nested objects and arrays. */
+    public void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '{' || c == '[') {
+            boolean object = c == '{';
+            open((char) c, object);
+            while (hasNext()) {
+                if (object) {
+                    nextName();
+                }
+                skipValue();
+            }
+            close(object ? '}' : ']', object);
+        } else {
+            nextString();
+        }
+    }
+
+    private String nextNumberText() throws IOException {
+        String text = nextString();
+        if (text == null) {
+            throw invalidValue();
+        }
+        return text.trim();
+    }
+
+    private void open(char bracket, boolean object) throws IOException {
+        beforeValue();
+        if (peekNonWhitespace() != bracket) {
+            throw error("Expected '" + bracket + "'");
+        }
+        if (depth == maxDepth) {
+            throw error("JSON nested deeper than " + maxDepth + " levels");
+        }
+        pos++;
+        depth++;
+        inObject[depth] = object;
+        pendingComma[depth] = false;
+    }
+
+    private void close(char bracket, boolean object) throws IOException {
+        if (depth == 0 || inObject[depth] != object || nameRead) {
+            throw error("Unexpected '" + bracket + "'");
+        }
+        if (peekNonWhitespace() != bracket) {
+            throw error("Expected '" + bracket + "'");
+        }
+        if (pendingComma[depth]) {
+            throw error("Trailing comma");
+        }
+        pos++;
+        depth--;
+        afterValue();
+    }
+
+    // In an object a value must follow its name; in an array it must not have one
+    private void beforeValue() {
+        if (depth > 0 && inObject[depth] && !nameRead) {
+            throw error("Expected a field name");
+        }
+        nameRead = false;
+        if (depth > 0) {
+            pendingComma[depth] = false;
+        }
+    }
+
+    // Consumes the separator after a member so hasNext() only has to look for the closer
+    private void afterValue() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        int c = peekNonWhitespace();
+        if (c == ',') {
+            pos++;
+            pendingComma[depth] = true;
+        } else if (c != (inObject[depth] ? '}' : ']')) {
+            throw error("Expected ',' or '" + (inObject[depth] ? '}' : ']') + "'");
+        }
+    }
+
+    // Reads up to the closing quote, decoding escapes; the opening quote is already consumed
+    private String readStringBody() throws IOException {
+        int length = 0;
+        // A high surrogate escape waits here for the low surrogate that should follow it
+        int highSurrogate = -1;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw error("Unterminated string");
+            }
+            byte b = buf[pos++];
+            if (b == '\\') {
+                if (pos == limit && !fill()) {
+                    throw error("Unterminated string");
+                }
+                byte e = buf[pos++];
+                if (e == 'u') {
+                    int unit = readHex4();
+                    if (highSurrogate >= 0) {
+                        if (Character.isLowSurrogate((char) unit)) {
+                            length = appendCodePoint(length, Character.toCodePoint((char) highSurrogate, (char) unit));
+                            highSurrogate = -1;
+                            continue;
+                        }
+                        length = appendCodePoint(length, 0xfffd);
+                        highSurrogate = -1;
+                    }
+                    if (Character.isHighSurrogate((char) unit)) {
+                        highSurrogate = unit;
+                    } else {
+                        // A lone low surrogate becomes U+FFFD, as String decoding would do
+                        length = appendCodePoint(length, Character.isLowSurrogate((char) unit) ? 0xfffd : unit);
+                    }
+                    continue;
+                }
+                if (highSurrogate >= 0) {
+                    length = appendCodePoint(length, 0xfffd);
+                    highSurrogate = -1;
+                }
+                switch (e) {
+                    case '"': case '\\': case '/':
+                        length = append(length, e);
+                        break;
+                    case 'b': length = append(length, '\b'); break;
+                    case 'f': length = append(length, '\f'); break;
+                    case 'n': length = append(length, '\n'); break;
+                    case 'r': length = append(length, '\r'); break;
+                    case 't': length = append(length, '\t'); break;
+                    default:
+                        throw error("Invalid escape '\\" + (char) e + "'");
+                }
+                continue;
+            }
+            if (highSurrogate >= 0) {
+                length = appendCodePoint(length, 0xfffd);
+                highSurrogate = -1;
+            }
+            if (b == '"') {
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            if ((b & 0xff) < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            // UTF-8 bytes are copied through and decoded once at the end
+            length = append(length, b);
+        }
+    }
+
+    private int appendCodePoint(int length, int cp) {
+        if (cp < 0x80) {
+            return append(length, cp);
+        }
+        if (cp < 0x800) {
+            length = append(length, 0xc0 | (cp >> 6));
+            return append(length, 0x80 | (cp & 0x3f));
+        }
+        if (cp < 0x10000) {
+            length = append(length, 0xe0 | (cp >> 12));
+            length = append(length, 0x80 | ((cp >> 6) & 0x3f));
+            return append(length, 0x80 | (cp & 0x3f));
+        }
+        length = append(length, 0xf0 | (cp >> 18));
+        length = append(length, 0x80 | ((cp >> 12) & 0x3f));
+        length = append(length, 0x80 | ((cp >> 6) & 0x3f));
+        return append(length, 0x80 | (cp & 0x3f));
+    }
+
+    private int readHex4() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (pos == limit && !fill()) {
+                throw error("Unterminated string");
+            }
+            int digit = Character.digit(buf[pos++], 16);
+            if (digit < 0) {
+                throw error("Invalid \\u escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private int append(int length, int b) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, length * 2);
+        }
+        scratch[length] = (byte) b;
+        return length + 1;
+    }
+
+    // Numbers, true, false and null: everything up to the next structural character
+    private String readLiteral() throws IOException {
+        int length = 0;
+        while (true) {
+            int c = peekByte();
+            if (c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c)) {
+                break;
+            }
+            if (c == '"' || c == '{' || c == '[' || length == MAX_LITERAL_LENGTH) {
+                throw invalidValue();
+            }
+            length = append(length, c);
+            pos++;
+        }
+        if (length == 0) {
+            throw error(peekByte() == -1 ? "Unexpected end of input" : "Expected a value");
+        }
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (true) {
+            int c = peekByte();
+            if (!isWhitespace(c)) {
+                return c;
+            }
+            pos++;
+        }
+    }
+
+    private int peekByte() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            return false;
+        }
+        consumed += n;
+        if (consumed > maxBytes) {
+            throw new BodyTooLargeException(maxBytes);
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private JsonException invalidValue() {
+        return error(currentName != null ? "Invalid value for \"" + currentName + "\"" : "Invalid value");
+    }
+
+    private JsonException error(String message) {
+        return new JsonException(message);
+    }
+}
@@ -0,0 +1,385 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON writer that encodes UTF-8 straight into a reusable per-thread
+ * buffer and drains it into the target stream as it fills. Commas between members are
+ * inserted automatically.
+ *
+ * For HTTP responses use {@link #forResponse}: headers are not sent until the buffer first
+ * fills, so small bodies go out with a Content-Length and large ones switch to chunked
+ * transfer. Until then the response can still be abandoned in favour of an error.
+ */
+public final class JsonWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final ThreadLocal<Boolean> BUFFER_IN_USE = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final OutputStream out;
+    private final HttpExchange exchange;
+    private final int status;
+    private final boolean ownsThreadBuffer;
+    private byte[] buf;
+    private int pos;
+    private boolean committed;
+    private boolean closed;
+
+    // needsComma[depth] is true once the current container has a member
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    private JsonWriter(OutputStream out, HttpExchange exchange, int status) {
+        this.out = out;
+        this.exchange = exchange;
+        this.status = status;
+        // Nested writers on one thread (rare) get their own buffer instead of sharing
+        if (!BUFFER_IN_USE.get()) {
+            BUFFER_IN_USE.set(Boolean.TRUE);
+            this.buf = BUFFERS.get();
+            this.ownsThreadBuffer = true;
+        } else {
+            this.buf = new byte[BUFFER_SIZE];
+            this.ownsThreadBuffer = false;
+        }
+    }
+
+    /** Writes into an arbitrary stream; the caller owns the stream. */
+    public static JsonWriter to(OutputStream out) {
+        return new JsonWriter(out, null, 0);
+    }
+
+    /** Writes a JSON response body; close() completes the exchange. */
+    public static JsonWriter forResponse(HttpExchange exchange, int status) {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        return new JsonWriter(null, exchange, status);
+    }
+
+    /** Renders into a standalone byte array, e.g. for caching. */
+    public static byte[] toBytes(Body body) throws Exception {
+        ByteSink sink = new ByteSink();
+        try (JsonWriter writer = to(sink)) {
+            body.write(writer);
+        }
+        return sink.toByteArray();
+    }
+
+    @FunctionalInterface
+    public interface Body {
+        void write(JsonWriter writer) throws Exception;
+    }
+
+    /** True once response headers have gone out and an error response is no longer possible. */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null");
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        writeAscii("null");
+        return this;
+    }
+
+    // Shorthands for the common name/value pair
+
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    /** Flushes what is buffered and, for responses, completes the exchange. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (exchange != null) {
+                if (!committed) {
+                    // Everything fit in the buffer: send it with an exact Content-Length
+                    committed = true;
+                    exchange.sendResponseHeaders(status, pos);
+                }
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(buf, 0, pos);
+                }
+            } else {
+                out.write(buf, 0, pos);
+                out.flush();
+            }
+        } finally {
+            pos = 0;
+            release();
+        }
+    }
+
+    /** Drops the buffered output without sending it, so the caller can reply with an error instead. */
+    public void abandon() {
+        if (committed) {
+            throw new IllegalStateException("Response already committed");
+        }
+        closed = true;
+        pos = 0;
+        release();
+    }
+
+    private void release() {
+        if (ownsThreadBuffer) {
+            BUFFER_IN_USE.set(Boolean.FALSE);
+        }
+        buf = null;
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        writeByte(bracket);
+        needsComma[++depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("Unbalanced " + bracket);
+        }
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            writeByte(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        escapeTo(s);
+        writeByte('"');
+    }
+
+    // The single escape + UTF-8 encode routine: no intermediate String or char[] copies
+    private void escapeTo(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                writeByte(c);
+                continue;
+            }
+            switch (c) {
+                case '"': writeByte('\\'); writeByte('"'); break;
+                case '\\': writeByte('\\'); writeByte('\\'); break;
+                case '\b': writeByte('\\'); writeByte('b'); break;
+                case '\f': writeByte('\\'); writeByte('f'); break;
+                case '\n': writeByte('\\'); writeByte('n'); break;
+                case '\r': writeByte('\\'); writeByte('r'); break;
+                case '\t': writeByte('\\'); writeByte('t'); break;
+                default:
+                    if (c < 0x20) {
+                        writeByte('\\');
+                        writeByte('u');
+                        writeByte('0');
+                        writeByte('0');
+                        writeByte(HEX[(c >> 4) & 0xf]);
+                        writeByte(HEX[c & 0xf]);
+                    } else if (c < 0x800) {
+                        writeByte(0xc0 | (c >> 6));
+                        writeByte(0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        writeByte(0xf0 | (cp >> 18));
+                        writeByte(0x80 | ((cp >> 12) & 0x3f));
+                        writeByte(0x80 | ((cp >> 6) & 0x3f));
+                        writeByte(0x80 | (cp & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        // Unpaired surrogate: emit U+FFFD like String.getBytes does
+                        writeByte(0xef);
+                        writeByte(0xbf);
+                        writeByte(0xbd);
+                    } else {
+                        writeByte(0xe0 | (c >> 12));
+                        writeByte(0x80 | ((c >> 6) & 0x3f));
+                        writeByte(0x80 | (c & 0x3f));
+                    }
+            }
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (pos == buf.length) {
+            drain();
+        }
+        buf[pos++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        if (closed) {
+            throw new IOException("JsonWriter is closed");
+        }
+        if (exchange != null) {
+            if (!committed) {
+                // Too big to buffer: switch to chunked transfer
+                committed = true;
+                exchange.sendResponseHeaders(status, 0);
+            }
+            exchange.getResponseBody().write(buf, 0, pos);
+        } else {
+            out.write(buf, 0, pos);
+        }
+        pos = 0;
+    }
+
+    /** Escapes a string for embedding between JSON quotes. */
+    public static String escape(String input) {
+        if (input == null) {
+            return "";
+        }
+        StringBuilder escaped = null;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            char c = input.charAt(i);
+            String replacement;
+            switch (c) {
+                case '"': replacement = "\\\""; break;
+                case '\\': replacement = "\\\\"; break;
+                case '\b': replacement = "\\b"; break;
+                case '\f': replacement = "\\f"; break;
+                case '\n': replacement = "\\n"; break;
+                case '\r': replacement = "\\r"; break;
+                case '\t': replacement = "\\t"; break;
+                default:
+                    if (c >= 0x20) {
+                        if (escaped != null) {
+                            escaped.append(c);
+                        }
+                        continue;
+                    }
+                    replacement = "\\u00" + (char) HEX[(c >> 4) & 0xf] + (char) HEX[c & 0xf];
+            }
+            // Only allocate once something actually needs escaping
+            if (escaped == null) {
+                escaped = new StringBuilder(n + 16).append(input, 0, i);
+            }
+            escaped.append(replacement);
+        }
+        return escaped == null ? input : escaped.toString();
+    }
+
+    // ByteArrayOutputStream without the synchronized methods
+    private static final class ByteSink extends OutputStream {
+        private byte[] data = new byte[BUFFER_SIZE];
+        private int size;
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            data[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, data, size, len);
+            size += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * An immutable array of items in a fixed order, paged by key rather than by offset: a page
+ * starts right after the last item of the previous one, found by binary search, so page N
+ * costs the same as page 1 and rows added before the cursor do not shift what comes next.
+ * The order must be total (end it on a unique id) for a cursor to land on one place.
+ *
+ * Build one per sort order and per partition worth indexing, and swap in new ones when the
+ * data changes; instances are safe to share between threads.
+ */
+public final class KeysetIndex<T> {
+    private final Object[] items;
+    private final Comparator<? super T> order;
+
+    public KeysetIndex(Collection<? extends T> items, Comparator<? super T> order) {
+        this.items = items.toArray();
+        this.order = order;
+        Arrays.sort(this.items, this::compare);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Up to {@code limit + 1} items that pass {@code filter}, walking forwards, or backwards
+     * when {@code descending}, from just past {@code after} (or from the start when null).
+     * The walk ends early at the first item for which {@code past} holds. A result longer
+     * than {@code limit} means there is at least one more page; drop its last item.
+     */
+    public List<T> page(T after, boolean descending, Predicate<? super T> filter, Predicate<? super T> past, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit + 1, 64));
+        int step = descending ? -1 : 1;
+        for (int i = start(after, descending); i >= 0 && i < items.length && page.size() <= limit; i += step) {
+            T item = item(i);
+            if (past.test(item)) {
+                break;
+            }
+            if (filter.test(item)) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    // First index strictly beyond the cursor in the walk direction
+    private int start(T after, boolean descending) {
+        if (after == null) {
+            return descending ? items.length - 1 : 0;
+        }
+        int low = 0;
+        int high = items.length;
+        // Finds the first item ordered after the cursor
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(item(mid), after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (!descending) {
+            return low;
+        }
+        // Walking backwards: the last item ordered before the cursor
+        int i = low - 1;
+        while (i >= 0 && order.compare(item(i), after) == 0) {
+            i--;
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int i) {
+        return (T) items[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return order.compare((T) a, (T) b);
+    }
+}
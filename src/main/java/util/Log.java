@@ -0,0 +1,184 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leveled logger. A call below the configured level returns after one comparison; anything
+ * else is queued for {@link AsyncAppender} with its arguments unformatted, and the
+ * {@code {}} placeholders are filled in on the writer thread. Arguments are therefore
+ * rendered a moment later, so pass values rather than objects that are about to change.
+ * As with SLF4J, a Throwable left over after the placeholders is logged with its stack trace.
+ *
+ * Each event carries the correlation ID of the request it was logged for, see {@link #correlate}.
+ *
+ * Configuration: -Dlog.level (TRACE, DEBUG, INFO, WARN, ERROR; default INFO), plus the
+ * appender settings described in {@link AsyncAppender}.
+ */
+public final class Log {
+    public enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final Level THRESHOLD = parseLevel(System.getProperty("log.level", "INFO"));
+    private static final ThreadLocal<String> CORRELATION_ID = new ThreadLocal<>();
+    private static final String ID_PREFIX = Long.toString(System.currentTimeMillis() % (36L * 36 * 36 * 36 * 36), 36);
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(Class<?> owner) {
+        return new Log(owner.getSimpleName());
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(THRESHOLD) >= 0;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    public void debug(String format, Object arg) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, format, new Object[] { arg });
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, format, new Object[] { arg1, arg2 });
+        }
+    }
+
+    public void debug(String format, Object... args) {
+        log(Level.DEBUG, format, args);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    public void info(String format, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, format, new Object[] { arg });
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, format, new Object[] { arg1, arg2 });
+        }
+    }
+
+    public void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    public void warn(String format, Object arg) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, format, new Object[] { arg });
+        }
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, format, new Object[] { arg1, arg2 });
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message, null);
+    }
+
+    public void error(String format, Object arg) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, format, new Object[] { arg });
+        }
+    }
+
+    public void error(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, format, new Object[] { arg1, arg2 });
+        }
+    }
+
+    public void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    private void log(Level level, String format, Object[] args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        AsyncAppender.append(new AsyncAppender.Event(System.currentTimeMillis(), level, name,
+            Thread.currentThread().getName(), CORRELATION_ID.get(), format, args));
+    }
+
+    /** A new ID, unique within this process and unlikely to repeat across restarts. */
+    public static String newCorrelationId() {
+        return ID_PREFIX + "-" + Long.toString(NEXT_ID.incrementAndGet(), 36);
+    }
+
+    /** The correlation ID of the request this thread is working on, or null. */
+    public static String correlationId() {
+        return CORRELATION_ID.get();
+    }
+
+    /**
+     * Tags everything this thread logs with {@code id} until the returned scope is closed,
+     * which restores the previous ID. Close it in a finally block; the scope is never used
+     * inside the body, so try-with-resources would draw a -Xlint:try warning.
+     */
+    public static Scope correlate(String id) {
+        String previous = CORRELATION_ID.get();
+        CORRELATION_ID.set(id);
+        return new Scope(previous);
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final String previous;
+
+        private Scope(String previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CORRELATION_ID.remove();
+            } else {
+                CORRELATION_ID.set(previous);
+            }
+        }
+    }
+
+    /** Writes out everything still queued; called once at shutdown. */
+    public static void shutdown() {
+        AsyncAppender.shutdown();
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log.level " + value + ", using INFO");
+            return Level.INFO;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide request and database metrics, exported in the Prometheus text format.
+ *
+ * Endpoints are labelled with the context path they were registered under, and queries
+ * with their SQL text, whitespace collapsed and IN lists folded to {@code (?)} so a query
+ * keeps one series whatever its list length. At most {@link #MAX_QUERIES} distinct queries
+ * get their own series; the rest are counted under "other".
+ */
+public final class Metrics {
+    static final int MAX_QUERIES = 256;
+
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    public static final class Endpoint {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    public static final class Query {
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        public void record(long nanos, boolean failed) {
+            latency.recordNanos(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+
+    private static final ConcurrentMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Query> QUERIES = new ConcurrentHashMap<>();
+    // Raw SQL to its series, so the normalising regexes run once per distinct string
+    private static final ConcurrentMap<String, Query> QUERIES_BY_SQL = new ConcurrentHashMap<>();
+    private static final LatencyHistogram POOL_WAIT = new LatencyHistogram();
+
+    private Metrics() {
+    }
+
+    /**
+     * Wraps a handler so every request through it is counted and timed. A request is an
+     * error if the handler throws or answers with a 5xx status.
+     */
+    public static HttpHandler instrument(String path, HttpHandler handler) {
+        Endpoint endpoint = ENDPOINTS.computeIfAbsent(path, p -> new Endpoint());
+        return exchange -> {
+            endpoint.requests.increment();
+            endpoint.inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                handler.handle(exchange);
+                failed = exchange.getResponseCode() >= 500;
+            } finally {
+                endpoint.latency.recordNanos(System.nanoTime() - start);
+                endpoint.inFlight.decrementAndGet();
+                if (failed) {
+                    endpoint.errors.increment();
+                }
+            }
+        };
+    }
+
+    public static Query query(String sql) {
+        Query query = QUERIES_BY_SQL.get(sql);
+        if (query != null) {
+            return query;
+        }
+        String label = PLACEHOLDER_LIST.matcher(WHITESPACE.matcher(sql.trim()).replaceAll(" ")).replaceAll("(?)");
+        query = QUERIES.get(label);
+        if (query == null) {
+            if (QUERIES.size() >= MAX_QUERIES) {
+                label = "other";
+            }
+            query = QUERIES.computeIfAbsent(label, l -> new Query());
+        }
+        // Statements built with literal values could grow this without bound
+        if (QUERIES_BY_SQL.size() < MAX_QUERIES * 4) {
+            QUERIES_BY_SQL.putIfAbsent(sql, query);
+        }
+        return query;
+    }
+
+    /** Time a caller spent in {@link ConnectionPool#borrow()} before getting a connection. */
+    public static void poolWait(long nanos) {
+        POOL_WAIT.recordNanos(nanos);
+    }
+
+    /** Everything recorded so far, in the Prometheus text exposition format. */
+    public static String export(ConnectionPool pool) {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        Map<String, Endpoint> endpoints = new TreeMap<>(ENDPOINTS);
+        Map<String, Query> queries = new TreeMap<>(QUERIES);
+
+        header(out, "http_requests_total", "counter", "Requests handled, by context path.");
+        endpoints.forEach((path, e) -> sample(out, "http_requests_total", "path", path, e.requests.sum()));
+        header(out, "http_request_errors_total", "counter", "Requests that failed or returned 5xx, by context path.");
+        endpoints.forEach((path, e) -> sample(out, "http_request_errors_total", "path", path, e.errors.sum()));
+        header(out, "http_requests_in_flight", "gauge", "Requests being handled right now, by context path.");
+        endpoints.forEach((path, e) -> sample(out, "http_requests_in_flight", "path", path, e.inFlight.get()));
+        header(out, "http_request_duration_seconds", "summary", "Request latency, by context path.");
+        endpoints.forEach((path, e) -> summary(out, "http_request_duration_seconds", "path", path, e.latency));
+
+        header(out, "db_query_duration_seconds", "summary", "Time spent executing each query.");
+        queries.forEach((sql, q) -> summary(out, "db_query_duration_seconds", "query", sql, q.latency));
+        header(out, "db_query_errors_total", "counter", "Executions that threw, by query.");
+        queries.forEach((sql, q) -> sample(out, "db_query_errors_total", "query", sql, q.errors.sum()));
+
+        header(out, "db_pool_wait_seconds", "summary", "Time spent waiting for a pooled connection.");
+        summary(out, "db_pool_wait_seconds", null, null, POOL_WAIT);
+        if (pool != null) {
+            header(out, "db_pool_connections", "gauge", "Pooled connections, by state.");
+            sample(out, "db_pool_connections", "state", "active", pool.getActiveCount());
+            sample(out, "db_pool_connections", "state", "idle", pool.getIdleCount());
+            header(out, "db_pool_max_connections", "gauge", "Largest size the pool may grow to.");
+            sample(out, "db_pool_max_connections", null, null, pool.getMaxSize());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String label, String value, LatencyHistogram histogram) {
+        for (double q : QUANTILES) {
+            out.append(name).append('{');
+            if (label != null) {
+                labelValue(out.append(label).append("=\""), value).append("\",");
+            }
+            out.append("quantile=\"").append(q).append("\"} ")
+                .append(histogram.percentileMicros(q) / 1e6).append('\n');
+        }
+        sample(out, name + "_sum", label, value, histogram.sumMicros() / 1e6);
+        sample(out, name + "_count", label, value, histogram.count());
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, double sample) {
+        out.append(name);
+        if (label != null) {
+            labelValue(out.append('{').append(label).append("=\""), value).append("\"}");
+        }
+        out.append(' ');
+        if (sample == Math.rint(sample) && Math.abs(sample) < 1e15) {
+            out.append((long) sample);
+        } else {
+            out.append(sample);
+        }
+        out.append('\n');
+    }
+
+    // Label values escape backslash, double quote and newline
+    private static StringBuilder labelValue(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,202 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of encoded response bodies keyed by endpoint and query string. Entries carry a
+ * strong ETag so unchanged responses can be answered with 304 Not Modified.
+ *
+ * Writers call {@link #invalidate(String)} after changing the data behind an endpoint, or
+ * {@link #invalidateKey(String)} when only one query of it is affected. A response built
+ * from data read before an invalidation is never stored: callers take
+ * {@link #generation(String)} before querying and pass it to {@link #put}. Generations are
+ * kept per endpoint path and per key, so a write to one endpoint or key does not stop
+ * responses for the others from being cached while it happens.
+ *
+ * At most {@code maxEntries} entries are kept. Expired entries are swept out at most once
+ * per TTL as new ones are stored, and past the limit the oldest go first. Per-key
+ * generations are bounded the same way: past the limit they are folded into the shared one.
+ */
+public final class ResponseCache {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long lastSweep = System.currentTimeMillis();
+    // Bumped by invalidateAll, by invalidate for a path, by invalidateKey for a single key
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> pathGenerations = new ConcurrentHashMap<>();
+    // Changed only under its own lock, so folding it into generation loses no increment
+    private final ConcurrentMap<String, AtomicLong> keyGenerations = new ConcurrentHashMap<>();
+
+    public static final class Entry {
+        public final byte[] body;
+        public final String etag;
+        final long expiresAt;
+
+        Entry(byte[] body, String etag, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        /** Wraps a body that is cached elsewhere, e.g. by data version rather than by TTL. */
+        public static Entry of(byte[] body) {
+            return new Entry(body, etag(body), Long.MAX_VALUE);
+        }
+    }
+
+    public ResponseCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    public Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /** Changes whenever {@code key} is invalidated, by itself or along with its endpoint path. */
+    public long generation(String key) {
+        // All three only ever grow, so the sum changes whenever any of them does. The key's
+        // counter is read first: a fold raises generation before it drops the key counters.
+        long current = key.indexOf('?') >= 0 ? counter(keyGenerations, key) : 0;
+        current += counter(pathGenerations, path(key));
+        return current + generation.get();
+    }
+
+    /**
+     * Wraps the body in an entry with its ETag, and caches it unless something was
+     * invalidated since {@code generationAtRead}. The entry is returned either way.
+     */
+    public Entry put(String key, byte[] body, long generationAtRead) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(body, etag(body), now + ttlMillis);
+        if (generation(key) == generationAtRead) {
+            entries.put(key, entry);
+            // An invalidation may have slipped in between the check and the put
+            if (generation(key) != generationAtRead) {
+                entries.remove(key, entry);
+            }
+            if (entries.size() > maxEntries || now - lastSweep >= ttlMillis) {
+                sweep(now);
+            }
+        }
+        return entry;
+    }
+
+    /** Drops every entry for the given endpoint path, whatever its query string. */
+    public void invalidate(String path) {
+        pathGenerations.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+        entries.keySet().removeIf(key -> path.equals(path(key)));
+    }
+
+    /** Drops the entry for one exact key, e.g. a single movie's show timings. */
+    public void invalidateKey(String key) {
+        if (key.indexOf('?') < 0) {
+            // A bare path is its own endpoint
+            invalidate(key);
+            return;
+        }
+        synchronized (keyGenerations) {
+            if (keyGenerations.size() >= maxEntries && !keyGenerations.containsKey(key)) {
+                // Raised past every sum the dropped counters took part in, so no generation repeats
+                long folded = 1;
+                for (AtomicLong counter : keyGenerations.values()) {
+                    folded += counter.get();
+                }
+                generation.addAndGet(folded);
+                keyGenerations.clear();
+            }
+            keyGenerations.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        }
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    // Expired entries out, then the oldest live ones until the cache is back under its limit
+    private void sweep(long now) {
+        lastSweep = now;
+        entries.values().removeIf(entry -> now >= entry.expiresAt);
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) {
+            return;
+        }
+        // A tenth more, so a full cache is not sorted again on every put
+        excess += maxEntries / 10;
+        List<Map.Entry<String, Entry>> oldest = new ArrayList<>(entries.entrySet());
+        oldest.sort(Comparator.comparingLong(e -> e.getValue().expiresAt));
+        for (int i = 0; i < excess && i < oldest.size(); i++) {
+            entries.remove(oldest.get(i).getKey(), oldest.get(i).getValue());
+        }
+    }
+
+    private static long counter(ConcurrentMap<String, AtomicLong> counters, String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private static String path(String key) {
+        int query = key.indexOf('?');
+        return query < 0 ? key : key.substring(0, query);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** True if an If-None-Match header value matches the given ETag. */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            char[] hex = new char[34];
+            hex[0] = '"';
+            for (int i = 0; i < 16; i++) {
+                hex[1 + i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[2 + i * 2] = HEX[digest[i] & 0xf];
+            }
+            hex[33] = '"';
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String etag(String body) {
+        return etag(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
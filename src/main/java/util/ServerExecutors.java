@@ -0,0 +1,131 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the executor the HTTP server dispatches requests onto.
+ *
+ * Modes (-Dserver.executor):
+ *   virtual - one virtual thread per request (Java 21+, falls back to pool on older JVMs)
+ *   pool    - bounded platform thread pool (-Dserver.threads)
+ *   single  - the JDK default: every request runs on the dispatcher thread
+ *
+ * In the virtual and pool modes at most -Dserver.maxInFlight requests run at once. When the
+ * cap is reached the dispatcher thread blocks, so new connections wait in the accept backlog
+ * instead of piling up on the database pool.
+ */
+public final class ServerExecutors {
+    private static final Log LOG = Log.get(ServerExecutors.class);
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_POOL = "pool";
+    public static final String MODE_SINGLE = "single";
+
+    private ServerExecutors() {
+    }
+
+    public static Executor fromSystemProperties() {
+        String mode = System.getProperty("server.executor", MODE_VIRTUAL);
+        int threads = Integer.getInteger("server.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+        int maxInFlight = Integer.getInteger("server.maxInFlight", 256);
+        return create(mode, threads, maxInFlight);
+    }
+
+    /**
+     * Returns null for the single-threaded mode, which HttpServer.setExecutor
+     * interprets as "use the dispatcher thread".
+     */
+    public static Executor create(String mode, int threads, int maxInFlight) {
+        switch (mode.toLowerCase()) {
+            case MODE_SINGLE:
+                return null;
+            case MODE_POOL:
+                return new BoundedExecutor(newPlatformPool(threads, maxInFlight), maxInFlight);
+            case MODE_VIRTUAL:
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if (virtual == null) {
+                    LOG.info("Virtual threads are not available on Java {}, falling back to a platform thread pool",
+                            Runtime.version().feature());
+                    return new BoundedExecutor(newPlatformPool(threads, maxInFlight), maxInFlight);
+                }
+                return new BoundedExecutor(virtual, maxInFlight);
+            default:
+                throw new IllegalArgumentException("Unknown server.executor mode: " + mode
+                        + " (expected virtual, pool or single)");
+        }
+    }
+
+    public static String describe(Executor executor) {
+        if (executor == null) {
+            return MODE_SINGLE;
+        }
+        return executor.toString();
+    }
+
+    private static ExecutorService newPlatformPool(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "http-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // The in-flight cap already bounds the queue; CallerRuns is only a safety net
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), factory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Looked up reflectively so the server still compiles and runs on Java 11-20
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    static final class BoundedExecutor implements Executor {
+        private final ExecutorService delegate;
+        private final Semaphore inFlight;
+        private final int maxInFlight;
+
+        BoundedExecutor(ExecutorService delegate, int maxInFlight) {
+            this.delegate = delegate;
+            this.maxInFlight = maxInFlight;
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            inFlight.acquireUninterruptibly();
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String kind = delegate instanceof ThreadPoolExecutor
+                    ? "pool(" + ((ThreadPoolExecutor) delegate).getMaximumPoolSize() + " threads)"
+                    : "virtual";
+            return kind + ", maxInFlight=" + maxInFlight;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the web app from memory. Every file under the root is read once, with gzip and
+ * deflate variants precomputed for text assets, and answered with ETag, Last-Modified and
+ * Cache-Control headers. In dev mode the directory is watched and changed files reloaded.
+ */
+public final class StaticAssets {
+    private static final Log LOG = Log.get(StaticAssets.class);
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static {
+        MIME_TYPES.put("html", "text/html; charset=utf-8");
+        MIME_TYPES.put("css", "text/css; charset=utf-8");
+        MIME_TYPES.put("js", "application/javascript; charset=utf-8");
+        MIME_TYPES.put("json", "application/json");
+        MIME_TYPES.put("xml", "application/xml");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("txt", "text/plain; charset=utf-8");
+    }
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+    private static final byte[] NOT_FOUND = "404 Not Found".getBytes();
+
+    private final Path root;
+    private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+
+    static final class Asset {
+        final String contentType;
+        final String cacheControl;
+        // One strong ETag per encoding, since the bytes differ: "<hash>", "<hash>-gz", "<hash>-df"
+        final String etag;
+        final String gzipEtag;
+        final String deflateEtag;
+        final String lastModified;
+        final long lastModifiedSeconds;
+        final byte[] identity;
+        final byte[] gzip;
+        final byte[] deflate;
+
+        Asset(String contentType, String cacheControl, String etag, long lastModifiedMillis,
+              byte[] identity, byte[] gzip, byte[] deflate) {
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.etag = etag;
+            this.gzipEtag = variant(etag, "gz");
+            this.deflateEtag = variant(etag, "df");
+            this.lastModifiedSeconds = lastModifiedMillis / 1000;
+            this.lastModified = HTTP_DATE.format(ZonedDateTime.ofInstant(
+                    java.time.Instant.ofEpochSecond(lastModifiedSeconds), ZoneOffset.UTC));
+            this.identity = identity;
+            this.gzip = gzip;
+            this.deflate = deflate;
+        }
+
+        private static String variant(String etag, String suffix) {
+            return etag.substring(0, etag.length() - 1) + "-" + suffix + "\"";
+        }
+    }
+
+    private StaticAssets(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public static StaticAssets load(Path root, boolean watch) throws IOException {
+        StaticAssets store = new StaticAssets(root);
+        store.loadAll();
+        if (watch) {
+            store.startWatcher();
+        }
+        return store;
+    }
+
+    public int size() {
+        return assets.size();
+    }
+
+    public static String mimeType(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return "text/plain";
+        }
+        String type = MIME_TYPES.get(path.substring(dot + 1).toLowerCase());
+        return type != null ? type : "text/plain";
+    }
+
+    public void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        Asset asset = assets.get(path.equals("/") ? "/index.html" : path);
+        if (asset == null) {
+            exchange.sendResponseHeaders(404, NOT_FOUND.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(NOT_FOUND);
+            }
+            return;
+        }
+
+        // The encoding is picked first, so the ETag sent and compared is the one for those bytes
+        byte[] body = asset.identity;
+        String etag = asset.etag;
+        String encoding = null;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null) {
+            if (asset.gzip != null && accepts(acceptEncoding, "gzip")) {
+                body = asset.gzip;
+                etag = asset.gzipEtag;
+                encoding = "gzip";
+            } else if (asset.deflate != null && accepts(acceptEncoding, "deflate")) {
+                body = asset.deflate;
+                etag = asset.deflateEtag;
+                encoding = "deflate";
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", asset.contentType);
+        exchange.getResponseHeaders().set("Cache-Control", asset.cacheControl);
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", asset.lastModified);
+        if (asset.gzip != null || asset.deflate != null) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        }
+
+        if (notModified(exchange, asset, etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static boolean notModified(HttpExchange exchange, Asset asset, String etag) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since when both are sent
+            return ResponseCache.matches(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toEpochSecond();
+                return asset.lastModifiedSeconds <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean accepts(String acceptEncoding, String coding) {
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.trim().split(";");
+            if (!pieces[0].trim().equalsIgnoreCase(coding)) {
+                continue;
+            }
+            // Honour an explicit q=0 refusal
+            for (int i = 1; i < pieces.length; i++) {
+                String param = pieces[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void loadAll() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                loadFile(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void loadFile(Path file) throws IOException {
+        String urlPath = urlPath(file);
+        if (!Files.isRegularFile(file)) {
+            assets.remove(urlPath);
+            return;
+        }
+        byte[] identity = Files.readAllBytes(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String contentType = mimeType(urlPath);
+
+        byte[] gzip = null;
+        byte[] deflate = null;
+        if (isCompressible(contentType)) {
+            gzip = worthIt(gzip(identity), identity);
+            deflate = worthIt(deflate(identity), identity);
+        }
+        // HTML names never change, so it always revalidates; other assets may be reused for an hour
+        String cacheControl = contentType.startsWith("text/html") ? "no-cache" : "public, max-age=3600";
+        assets.put(urlPath, new Asset(contentType, cacheControl, ResponseCache.etag(identity),
+                lastModified, identity, gzip, deflate));
+    }
+
+    private String urlPath(Path file) {
+        String relative = root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+        return "/" + relative;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/")
+                || contentType.startsWith("image/svg");
+    }
+
+    // Only keep a compressed variant that saves at least 10%
+    private static byte[] worthIt(byte[] compressed, byte[] identity) {
+        return compressed.length < identity.length * 9L / 10 ? compressed : null;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream def = new DeflaterOutputStream(out, deflater)) {
+            def.write(data);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private void startWatcher() throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+        registerTree(root, watcher, dirs);
+
+        Thread thread = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+                Path dir = dirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path) event.context());
+                    try {
+                        if (Files.isDirectory(changed)) {
+                            registerTree(changed, watcher, dirs);
+                            Files.walk(changed).filter(Files::isRegularFile).forEach(this::reload);
+                        } else {
+                            reload(changed);
+                        }
+                    } catch (IOException e) {
+                        LOG.warn("Could not reload {}: {}", changed, e.getMessage());
+                    }
+                }
+                if (!key.reset()) {
+                    dirs.remove(key);
+                }
+            }
+        }, "static-asset-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void reload(Path file) {
+        try {
+            loadFile(file);
+            LOG.info("Reloaded static asset {}", urlPath(file));
+        } catch (IOException e) {
+            // The file may be mid-write or deleted; drop it until the next event
+            assets.remove(urlPath(file));
+        }
+    }
+
+    private static void registerTree(Path start, WatchService watcher, Map<WatchKey, Path> dirs) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                dirs.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
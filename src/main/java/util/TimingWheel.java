@@ -0,0 +1,171 @@
+package util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel for large numbers of cancellable timeouts. Scheduling and
+ * cancelling are O(1); each level covers wheelSize times the span of the level below,
+ * and timeouts cascade down a level as their deadline gets closer.
+ *
+ * Expired tasks run on the wheel's single ticker thread, so they must be short.
+ */
+public final class TimingWheel {
+    private static final Log LOG = Log.get(TimingWheel.class);
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final int wheelSize;
+    private final int bits;
+    private final long mask;
+    private final Bucket[][] buckets;
+    private final long startNanos;
+    private final ScheduledExecutorService ticker;
+
+    // Number of ticks processed so far; guarded by this
+    private long currentTick;
+    private int pending;
+
+    // Typed holder for a slot's timeouts, since Java cannot create an array of ArrayDeque<Timeout>
+    private static final class Bucket {
+        final ArrayDeque<Timeout> timeouts = new ArrayDeque<>();
+    }
+
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /** Returns false if the task already ran. */
+        public boolean cancel() {
+            cancelled = true;
+            return !expired;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    public TimingWheel(long tickMillis, int wheelSize, String name) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheelSize = wheelSize;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.buckets = new Bucket[LEVELS][wheelSize];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < wheelSize; slot++) {
+                buckets[level][slot] = new Bucket();
+            }
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::advanceClock, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        // Round up so a timeout never fires early
+        long deadlineTick = (elapsed + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(task, deadlineTick);
+        synchronized (this) {
+            // The current tick's slot has already been drained, so new timeouts start at the next one
+            insert(timeout, currentTick + 1);
+            pending++;
+        }
+        return timeout;
+    }
+
+    public synchronized int pendingCount() {
+        return pending;
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    private void insert(Timeout timeout, long earliestTick) {
+        long expiry = Math.max(timeout.deadlineTick, earliestTick);
+        long delta = expiry - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (bits * (level + 1))) || level == LEVELS - 1) {
+                // Timeouts beyond the top level's span park in its furthest slot and get re-inserted on cascade
+                long ticksAtLevel = level == LEVELS - 1
+                        ? Math.min(expiry >>> (bits * level), (currentTick >>> (bits * level)) + mask)
+                        : expiry >>> (bits * level);
+                buckets[level][(int) (ticksAtLevel & mask)].timeouts.add(timeout);
+                return;
+            }
+        }
+    }
+
+    private void advanceClock() {
+        long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            while (currentTick < targetTick) {
+                currentTick++;
+                cascade(1);
+                ArrayDeque<Timeout> bucket = buckets[0][(int) (currentTick & mask)].timeouts;
+                Timeout timeout;
+                while ((timeout = bucket.poll()) != null) {
+                    if (timeout.cancelled) {
+                        pending--;
+                    } else if (timeout.deadlineTick <= currentTick) {
+                        pending--;
+                        expired.add(timeout);
+                    } else {
+                        insert(timeout, currentTick + 1);
+                    }
+                }
+            }
+        }
+        for (Timeout timeout : expired) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            timeout.expired = true;
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Timer task failed", e);
+            }
+        }
+    }
+
+    // When the level below wraps around, pull the next slot of this level down
+    private void cascade(int level) {
+        if (level >= LEVELS || (currentTick & ((1L << (bits * level)) - 1)) != 0) {
+            return;
+        }
+        cascade(level + 1);
+        ArrayDeque<Timeout> bucket = buckets[level][(int) ((currentTick >>> (bits * level)) & mask)].timeouts;
+        List<Timeout> moving = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timeout timeout : moving) {
+            if (timeout.cancelled) {
+                pending--;
+            } else {
+                // Cascading runs before the current level-0 slot is drained, so it may still land there
+                insert(timeout, currentTick);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Popularity counters keyed by id. Increments go to striped LongAdders so hot keys do not
+ * contend, and the top-K ranking is recomputed at most once per refresh interval and only
+ * after something changed; readers in between get the cached ranking.
+ */
+public final class TopKCounter {
+    private final int capacity;
+    private final long refreshMillis;
+    private final ConcurrentMap<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty = true;
+    private volatile long computedAt;
+    private volatile List<Integer> ranking = Collections.emptyList();
+
+    /** @param capacity the largest K callers will ask for */
+    public TopKCounter(int capacity, long refreshMillis) {
+        this.capacity = capacity;
+        this.refreshMillis = refreshMillis;
+    }
+
+    public void add(int id, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        counts.computeIfAbsent(id, key -> new LongAdder()).add(delta);
+        dirty = true;
+    }
+
+    public long get(int id) {
+        LongAdder adder = counts.get(id);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /** Replaces every count with an authoritative snapshot, e.g. from a reconciliation query. */
+    public void reset(Map<Integer, Long> snapshot) {
+        counts.keySet().retainAll(snapshot.keySet());
+        for (Map.Entry<Integer, Long> entry : snapshot.entrySet()) {
+            LongAdder adder = counts.computeIfAbsent(entry.getKey(), key -> new LongAdder());
+            adder.reset();
+            adder.add(entry.getValue());
+        }
+        dirty = true;
+        computedAt = 0;
+    }
+
+    /** Ids with the highest positive counts, highest first; ties go to the lower id. */
+    public List<Integer> top(int k) {
+        List<Integer> current = ranking;
+        long now = System.currentTimeMillis();
+        if (dirty && now - computedAt >= refreshMillis) {
+            synchronized (this) {
+                if (dirty && now - computedAt >= refreshMillis) {
+                    dirty = false;
+                    current = compute();
+                    ranking = current;
+                    computedAt = now;
+                }
+                current = ranking;
+            }
+        }
+        return current.size() <= k ? current : current.subList(0, k);
+    }
+
+    private List<Integer> compute() {
+        // Min-heap of the best `capacity` entries seen so far
+        PriorityQueue<long[]> heap = new PriorityQueue<>(capacity + 1, (a, b) -> a[1] != b[1]
+                ? Long.compare(a[1], b[1])
+                : Long.compare(b[0], a[0]));
+        for (Map.Entry<Integer, LongAdder> entry : counts.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count <= 0) {
+                continue;
+            }
+            heap.offer(new long[] { entry.getKey(), count });
+            if (heap.size() > capacity) {
+                heap.poll();
+            }
+        }
+        List<Integer> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add((int) heap.poll()[0]);
+        }
+        Collections.reverse(result);
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,362 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque records in memory-mapped segment files. Each record gets a
+ * sequence number (LSN), starting at 1 and increasing by one per record.
+ *
+ * {@link #append} returns once the record is on disk. Concurrent appenders share fsyncs:
+ * the first one to need a sync flushes everything written so far, and the others wait for
+ * it instead of issuing their own (group commit).
+ *
+ * Record layout: int payload length, int CRC-32 of LSN and payload, long LSN, payload. A
+ * zero length marks the end of the written part of a segment. On open, the log resumes
+ * after the last intact record, so a torn write at the tail is discarded.
+ */
+public final class WriteAheadLog {
+    private static final int HEADER_BYTES = 16;
+    private static final int END_MARKER_BYTES = 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path dir;
+    private final int segmentBytes;
+
+    // Guarded by writeLock
+    private final Object writeLock = new Object();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private int writePosition;
+
+    private volatile long appendedLsn;
+    private final AtomicLong durableLsn = new AtomicLong();
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncInProgress;
+
+    /** An intact record read back from the log. */
+    public static final class Record {
+        public final long lsn;
+        public final byte[] payload;
+
+        Record(long lsn, byte[] payload) {
+            this.lsn = lsn;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Segment {
+        final long startLsn;
+        final Path path;
+        final MappedByteBuffer buffer;
+
+        Segment(long startLsn, Path path, MappedByteBuffer buffer) {
+            this.startLsn = startLsn;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private WriteAheadLog(Path dir, int segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the log in {@code dir}, recovering whatever is there. An empty log starts at
+     * {@code firstLsn}, so numbering can carry on from a consumer's checkpoint.
+     */
+    public static WriteAheadLog open(Path dir, int segmentBytes, long firstLsn) throws IOException {
+        Files.createDirectories(dir);
+        WriteAheadLog log = new WriteAheadLog(dir, segmentBytes);
+        log.recover(firstLsn);
+        return log;
+    }
+
+    /** LSN of the last record on disk, or one less than the first LSN if the log is empty. */
+    public long durableLsn() {
+        return durableLsn.get();
+    }
+
+    /** Appends a record and waits until it is on disk; returns its LSN. */
+    public long append(byte[] payload) throws IOException {
+        return append(payload, lsn -> { });
+    }
+
+    /**
+     * Like {@link #append(byte[])}, but hands the LSN to {@code assigned} as soon as it is
+     * given out, before the record can count as durable or be read by a cursor. Anything
+     * {@code assigned} records is therefore in place by the time the record is visible.
+     * It runs under the write lock, so it must be quick and must not touch the log.
+     */
+    public long append(byte[] payload, LongConsumer assigned) throws IOException {
+        long lsn = write(payload, assigned);
+        awaitDurable(lsn);
+        return lsn;
+    }
+
+    private long write(byte[] payload, LongConsumer assigned) throws IOException {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes + END_MARKER_BYTES > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit in a segment");
+        }
+        synchronized (writeLock) {
+            if (writePosition + recordBytes + END_MARKER_BYTES > segmentBytes) {
+                roll();
+            }
+            long lsn = appendedLsn + 1;
+            MappedByteBuffer buffer = current.buffer;
+            int position = writePosition;
+            buffer.putInt(position + 4, checksum(lsn, payload));
+            buffer.putLong(position + 8, lsn);
+            ByteBuffer body = buffer.duplicate();
+            body.position(position + HEADER_BYTES);
+            body.put(payload);
+            buffer.putInt(position + recordBytes, 0);
+            // Length last, so a reader never sees a length without the record behind it
+            buffer.putInt(position, payload.length);
+            writePosition = position + recordBytes;
+            appendedLsn = lsn;
+            // Durability and cursors only go as far as an appendedLsn read under this lock
+            assigned.accept(lsn);
+            return lsn;
+        }
+    }
+
+    // Group commit: one caller forces everything appended so far while later callers wait
+    private void awaitDurable(long lsn) throws IOException {
+        syncLock.lock();
+        try {
+            while (durableLsn.get() < lsn) {
+                if (syncInProgress) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncInProgress = true;
+                long target;
+                MappedByteBuffer buffer;
+                synchronized (writeLock) {
+                    target = appendedLsn;
+                    buffer = current.buffer;
+                }
+                syncLock.unlock();
+                try {
+                    // Earlier segments were forced when the log rolled over
+                    buffer.force();
+                } finally {
+                    syncLock.lock();
+                    syncInProgress = false;
+                    synced.signalAll();
+                }
+                advanceDurable(target);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Called with writeLock held
+    private void roll() throws IOException {
+        current.buffer.force();
+        long startLsn = appendedLsn + 1;
+        current = createSegment(startLsn);
+        segments.add(current);
+        writePosition = 0;
+        // Everything in the finished segment is durable now. Not under syncLock: a sync
+        // leader takes writeLock while holding it, so taking it here could deadlock.
+        advanceDurable(startLsn - 1);
+    }
+
+    private void advanceDurable(long lsn) {
+        long durable;
+        while ((durable = durableLsn.get()) < lsn && !durableLsn.compareAndSet(durable, lsn)) {
+            // Lost a race with another advance; re-check
+        }
+    }
+
+    /**
+     * Deletes segments that hold only records up to {@code appliedLsn}. The segment being
+     * written is always kept.
+     */
+    public void truncate(long appliedLsn) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (writeLock) {
+            while (segments.size() > 1 && segments.get(1).startLsn <= appliedLsn + 1) {
+                obsolete.add(segments.remove(0).path);
+            }
+        }
+        for (Path path : obsolete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /** Reads durable records in order, starting at {@code fromLsn}. */
+    public Cursor cursor(long fromLsn) {
+        return new Cursor(fromLsn);
+    }
+
+    public final class Cursor {
+        private long nextLsn;
+        private ByteBuffer view;
+        private int position;
+
+        private Cursor(long fromLsn) {
+            this.nextLsn = fromLsn;
+        }
+
+        /** The next durable record, or null if there is none yet. */
+        public Record next() {
+            if (nextLsn > durableLsn.get()) {
+                return null;
+            }
+            // At the end of a segment the record is in the next one
+            if (view == null || view.getInt(position) == 0) {
+                seek();
+            }
+            Record record = readAt(view, position);
+            if (record == null || record.lsn != nextLsn) {
+                throw new IllegalStateException("Write-ahead log is corrupt at LSN " + nextLsn);
+            }
+            position += HEADER_BYTES + record.payload.length;
+            nextLsn++;
+            return record;
+        }
+
+        // Finds the segment holding nextLsn and the offset of that record within it
+        private void seek() {
+            Segment segment = null;
+            synchronized (writeLock) {
+                for (Segment candidate : segments) {
+                    if (candidate.startLsn <= nextLsn) {
+                        segment = candidate;
+                    }
+                }
+            }
+            if (segment == null) {
+                throw new IllegalStateException("LSN " + nextLsn + " is no longer in the write-ahead log");
+            }
+            view = segment.buffer.duplicate();
+            position = 0;
+            long lsn = segment.startLsn;
+            while (lsn < nextLsn) {
+                int length = view.getInt(position);
+                if (length == 0) {
+                    throw new IllegalStateException("Write-ahead log is missing LSN " + nextLsn);
+                }
+                position += HEADER_BYTES + length;
+                lsn++;
+            }
+        }
+    }
+
+    private void recover(long firstLsn) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        files.sort((a, b) -> Long.compare(startLsnOf(a), startLsnOf(b)));
+
+        long expectedLsn = files.isEmpty() ? firstLsn : startLsnOf(files.get(0));
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            if (startLsnOf(path) != expectedLsn) {
+                // A gap means this and later segments were never fully written
+                discard(files.subList(i, files.size()));
+                break;
+            }
+            Segment segment = new Segment(expectedLsn, path, map(path));
+            segments.add(segment);
+            int position = 0;
+            Record record;
+            while ((record = readAt(segment.buffer, position)) != null && record.lsn == expectedLsn) {
+                position += HEADER_BYTES + record.payload.length;
+                expectedLsn++;
+            }
+            current = segment;
+            writePosition = position;
+            if (segment.buffer.getInt(position) != 0) {
+                // Torn write at the tail: drop it and anything after it
+                segment.buffer.putInt(position, 0);
+                segment.buffer.force();
+                discard(files.subList(i + 1, files.size()));
+                break;
+            }
+        }
+        if (current == null) {
+            current = createSegment(expectedLsn);
+            segments.add(current);
+            writePosition = 0;
+        }
+        appendedLsn = expectedLsn - 1;
+        durableLsn.set(expectedLsn - 1);
+    }
+
+    private static void discard(List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private Segment createSegment(long startLsn) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, startLsn, SEGMENT_SUFFIX));
+        return new Segment(startLsn, path, map(path));
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file; the new bytes read as zero
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    // Returns null unless a complete record with a valid checksum starts at position
+    private Record readAt(ByteBuffer buffer, int position) {
+        if (position + HEADER_BYTES + END_MARKER_BYTES > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_BYTES + length + END_MARKER_BYTES > buffer.capacity()) {
+            return null;
+        }
+        int crc = buffer.getInt(position + 4);
+        long lsn = buffer.getLong(position + 8);
+        byte[] payload = new byte[length];
+        ByteBuffer body = buffer.duplicate();
+        body.position(position + HEADER_BYTES);
+        body.get(payload);
+        return checksum(lsn, payload) == crc ? new Record(lsn, payload) : null;
+    }
+
+    private static int checksum(long lsn, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (lsn >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static long startLsnOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -3,8 +3,49 @@ document.addEventListener('DOMContentLoaded', function() {
     loadSnacks();
     setupUserProfile();
     initializeSlideshow();
+    setupMovieSearch();
 });
 
+function setupMovieSearch() {
+    const input = document.querySelector('.search-box input');
+    if (!input) return;
+    
+    // Searched on the server as the user types; only the newest query's answer is shown
+    let timer = null;
+    let latest = 0;
+    input.addEventListener('input', function() {
+        clearTimeout(timer);
+        const query = input.value;
+        timer = setTimeout(() => {
+            const requestNo = ++latest;
+            if (query.trim() === '') {
+                loadMovies();
+                return;
+            }
+            fetch('/api/movies/search?q=' + encodeURIComponent(query))
+                .then(response => {
+                    if (!response.ok) {
+                        return response.json().then(err => Promise.reject(err));
+                    }
+                    return response.json();
+                })
+                .then(data => {
+                    if (requestNo !== latest) return;
+                    const movieContainer = document.getElementById('movieContainer');
+                    movieContainer.innerHTML = '';
+                    if (data.movies.length === 0) {
+                        movieContainer.innerHTML = '<p class="no-movies">No movies match your search.</p>';
+                        return;
+                    }
+                    data.movies.forEach(movie => movieContainer.appendChild(createMovieCard(movie)));
+                })
+                .catch(error => {
+                    console.error('Error searching movies:', error);
+                });
+        }, 150);
+    });
+}
+
 function initializeSlideshow() {
     // Initialize the slideshow with auto-rotation
     new Swiper('.hero-slider', {